@@ -271,6 +271,24 @@ module.exports = function (grunt) {
                 }]
             }
         },
+        // gzip sidecars of the text files, served instead of compressing them on every request
+        compress: {
+            dist: {
+                options: {
+                    mode: 'gzip',
+                    level: 9
+                },
+                files: [{
+                    expand: true,
+                    cwd: '<%= yeoman.dist %>',
+                    src: ['**/*.{html,js,css,svg,json,ttf,eot}'],
+                    dest: '<%= yeoman.dist %>',
+                    rename: function (dest, src) {
+                        return dest + '/' + src + '.gz';
+                    }
+                }]
+            }
+        },
         // Put files not handled in other tasks here
         copy: {
             dist: {
@@ -428,7 +446,8 @@ module.exports = function (grunt) {
         'uglify',
         'rev',
         'usemin',
-        'htmlmin'
+        'htmlmin',
+        'compress'
     ]);
 
     grunt.registerTask('buildHeroku', [
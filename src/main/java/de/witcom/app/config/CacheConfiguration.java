@@ -2,6 +2,14 @@ package de.witcom.app.config;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.ehcache.InstrumentedEhcache;
+import de.witcom.app.config.cache.ClusterCacheInvalidator;
+import de.witcom.app.config.cache.EhcacheRegionsPostProcessor;
+import de.witcom.app.config.cache.InvalidationTransport;
+import de.witcom.app.config.cache.LoopbackInvalidationTransport;
+import de.witcom.app.config.cache.TcpInvalidationTransport;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
@@ -12,15 +20,17 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.cache.ehcache.EhCacheCacheManager;
 import org.springframework.core.env.Environment;
-import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.metamodel.EntityType;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeSet;
 
 @Configuration
 @EnableCaching
@@ -41,6 +51,8 @@ public class CacheConfiguration {
 
     private net.sf.ehcache.CacheManager cacheManager;
 
+    private ClusterCacheInvalidator invalidator;
+
     @PreDestroy
     public void destroy() {
         log.info("Remove Cache Manager metrics");
@@ -48,28 +60,39 @@ public class CacheConfiguration {
         for (String name : names) {
             metricRegistry.remove(name);
         }
+        if (invalidator != null) {
+            log.info("Closing cache invalidation transport");
+            try {
+                invalidator.close();
+            } catch (IOException e) {
+                log.warn("Failed to close cache invalidation transport: {}", e.getMessage());
+            }
+        }
         log.info("Closing Cache Manager");
         cacheManager.shutdown();
     }
 
+    @Bean
+    public static EhcacheRegionsPostProcessor ehcacheRegionsPostProcessor() {
+        return new EhcacheRegionsPostProcessor();
+    }
+
     @Bean
     public CacheManager cacheManager() {
         log.debug("Starting Ehcache");
+        // created by the EhcacheRegionsPostProcessor, before Hibernate built its regions
         cacheManager = net.sf.ehcache.CacheManager.create();
-        cacheManager.getConfiguration().setMaxBytesLocalHeap(env.getProperty("cache.ehcache.maxBytesLocalHeap", String.class, "16M"));
+        SessionFactoryImplementor sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        for (String region : hibernateRegions(sessionFactory)) {
+            // regions missing from ehcache.xml and the properties get the default cache settings
+            net.sf.ehcache.Ehcache cache = cacheManager.addCacheIfAbsent(region);
+            EhcacheRegionsPostProcessor.configureExpiry(env, region, cache.getCacheConfiguration());
+        }
+        startInvalidation(sessionFactory);
         log.debug("Registering Ehcache Metrics gauges");
-        Set<EntityType<?>> entities = entityManager.getMetamodel().getEntities();
-        for (EntityType<?> entity : entities) {
-
-            String name = entity.getName();
-            if (name == null || entity.getJavaType() != null) {
-                name = entity.getJavaType().getName();
-            }
-            Assert.notNull(name, "entity cannot exist without a identifier");
-
+        for (String name : cacheManager.getCacheNames()) {
             net.sf.ehcache.Cache cache = cacheManager.getCache(name);
             if (cache != null) {
-                cache.getCacheConfiguration().setTimeToLiveSeconds(env.getProperty("cache.timeToLiveSeconds", Long.class, 3600L));
                 net.sf.ehcache.Ehcache decoratedCache = InstrumentedEhcache.instrument(metricRegistry, cache);
                 cacheManager.replaceCacheWithDecoratedCache(cache, decoratedCache);
             }
@@ -78,4 +101,64 @@ public class CacheConfiguration {
         ehCacheManager.setCacheManager(cacheManager);
         return ehCacheManager;
     }
+
+    /**
+     * Receives the entries evicted without Hibernate events, to send them to the other nodes.
+     */
+    @Bean
+    public ClusterCacheInvalidator clusterCacheInvalidator() {
+        // created with the cache manager
+        cacheManager();
+        return invalidator;
+    }
+
+    /**
+     * Sends the invalidations of this node to the other nodes, and applies theirs, when a transport is configured.
+     */
+    private void startInvalidation(SessionFactoryImplementor sessionFactory) {
+        String transportName = env.getProperty("jhipster.cache.invalidation.transport", "none");
+        InvalidationTransport transport;
+        if ("tcp".equals(transportName)) {
+            transport = new TcpInvalidationTransport(env.getProperty("jhipster.cache.invalidation.port", Integer.class, 7800),
+                Arrays.asList(StringUtils.tokenizeToStringArray(env.getProperty("jhipster.cache.invalidation.peers", ""), ",")));
+        } else if ("loopback".equals(transportName)) {
+            transport = new LoopbackInvalidationTransport(env.getProperty("jhipster.cache.invalidation.group", "default"));
+        } else {
+            log.debug("Cache invalidations are not sent to other nodes");
+            transport = null;
+        }
+        if (transport != null) {
+            log.debug("Starting {} cache invalidation transport", transportName);
+        }
+        invalidator = new ClusterCacheInvalidator(sessionFactory, cacheManager, transport);
+        try {
+            invalidator.start(Arrays.asList(StringUtils.tokenizeToStringArray(
+                env.getProperty("jhipster.cache.invalidation.caches", SecurityConfiguration.USER_CACHE), ",")));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to start the cache invalidation transport", e);
+        }
+    }
+
+    /**
+     * @return the regions of all cached entities, natural ids and collections
+     */
+    private Set<String> hibernateRegions(SessionFactoryImplementor sessionFactory) {
+        Set<String> regions = new TreeSet<>();
+        for (String entityName : sessionFactory.getAllClassMetadata().keySet()) {
+            EntityPersister persister = sessionFactory.getEntityPersister(entityName);
+            if (persister.hasCache()) {
+                regions.add(persister.getCacheAccessStrategy().getRegion().getName());
+            }
+            if (persister.hasNaturalIdCache()) {
+                regions.add(persister.getNaturalIdCacheAccessStrategy().getRegion().getName());
+            }
+        }
+        for (String role : sessionFactory.getAllCollectionMetadata().keySet()) {
+            CollectionPersister persister = sessionFactory.getCollectionPersister(role);
+            if (persister.hasCache()) {
+                regions.add(persister.getCacheAccessStrategy().getRegion().getName());
+            }
+        }
+        return regions;
+    }
 }
@@ -1,35 +1,48 @@
 package de.witcom.app.config;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
 
-import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
-import org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod;
-import org.mitre.oauth2.model.RegisteredClient;
+import net.sf.ehcache.Ehcache;
+
 import org.mitre.openid.connect.client.service.impl.PlainAuthRequestUrlBuilder;
 import org.mitre.openid.connect.client.service.impl.StaticAuthRequestOptionsService;
-import org.mitre.openid.connect.client.service.impl.StaticClientConfigurationService;
-import org.mitre.openid.connect.client.service.impl.StaticServerConfigurationService;
-import org.mitre.openid.connect.client.service.impl.StaticSingleIssuerService;
-import org.mitre.openid.connect.config.ServerConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.util.StringUtils;
+
+import com.codahale.metrics.MetricRegistry;
 
 import de.witcom.app.domain.ExternalAccountProvider;
+import de.witcom.app.security.oidc.CookieLoginStateStore;
+import de.witcom.app.security.oidc.HttpSessionLoginStateStore;
+import de.witcom.app.security.oidc.OIDCAuthFilter;
 import de.witcom.app.security.oidc.OIDCAuthProvider;
 import de.witcom.app.security.oidc.OIDCAuthenticationSuccessHandler;
 import de.witcom.app.security.oidc.OIDCConfigurer;
+import de.witcom.app.security.oidc.OIDCHttpClient;
+import de.witcom.app.security.oidc.OIDCIssuerProperties;
+import de.witcom.app.security.oidc.OIDCIssuerRegistry;
+import de.witcom.app.security.oidc.OIDCKeyStore;
+import de.witcom.app.security.oidc.OIDCLoginStateStore;
+import de.witcom.app.security.oidc.OIDCUserInfoCache;
+import de.witcom.app.security.oidc.OIDCVerifiedTokenCache;
+import de.witcom.app.security.oidc.OIDCUserInfoFetcher;
 
 
 @Configuration
@@ -44,17 +57,37 @@ public class OpendIDConnectConfiguration implements EnvironmentAware{
 	private static final String PROP_CLIENTID = "clientId";
 	private static final String PROP_CLIENTSECRET = "clientSecret";
 	private static final String PROP_REDIRECTURI = "redirectUri";
+	private static final String PROP_JWKSURI = "jwksUri";
+	private static final String PROP_ISSUERS = "issuers.";
+	private static final String ENV_OPENIDCONNECT_HTTP = "openidconnect.http.";
+	private static final String ENV_OPENIDCONNECT_ASYNC = "openidconnect.async.";
+	private static final String ENV_OPENIDCONNECT_STATE = "openidconnect.state.";
 	
 	private final Logger log = LoggerFactory.getLogger(OpendIDConnectConfiguration.class);
 
     private RelaxedPropertyResolver propertyResolver;
 
+    private RelaxedPropertyResolver httpPropertyResolver;
+
+    private RelaxedPropertyResolver asyncPropertyResolver;
+
+    private RelaxedPropertyResolver statePropertyResolver;
+
     private Environment env;
 
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+
     @Override
     public void setEnvironment(Environment env) {
         this.env = env;
         this.propertyResolver = new RelaxedPropertyResolver(env, ENV_OPENIDCONNECT);
+        this.httpPropertyResolver = new RelaxedPropertyResolver(env, ENV_OPENIDCONNECT_HTTP);
+        this.asyncPropertyResolver = new RelaxedPropertyResolver(env, ENV_OPENIDCONNECT_ASYNC);
+        this.statePropertyResolver = new RelaxedPropertyResolver(env, ENV_OPENIDCONNECT_STATE);
     }
    
     @Bean
@@ -62,9 +95,98 @@ public class OpendIDConnectConfiguration implements EnvironmentAware{
     	
     	OIDCAuthProvider impl = new OIDCAuthProvider();
     	impl.setProvider(ExternalAccountProvider.DUMMYSSO);
+    	impl.setUserInfoFetcher(userInfoFetcher());
+    	impl.setIssuerRegistry(oidcIssuerRegistry());
     	return impl;
     }
+
+    @Bean
+    public OIDCUserInfoFetcher userInfoFetcher() {
+        OIDCUserInfoFetcher fetcher = new OIDCUserInfoFetcher(oidcHttpClient());
+        fetcher.setIssuerRegistry(oidcIssuerRegistry());
+        Cache cache = cacheManager != null ? cacheManager.getCache(OIDCUserInfoCache.CACHE_NAME) : null;
+        if (cache != null) {
+            log.debug("Caching userinfo responses in {}", OIDCUserInfoCache.CACHE_NAME);
+            fetcher.setUserInfoCache(new OIDCUserInfoCache((Ehcache) cache.getNativeCache()));
+        }
+        return fetcher;
+    }
+
+    @Bean
+    public OIDCHttpClient oidcHttpClient() {
+        log.debug("Configuring OIDC HTTP client pool");
+        return configureHttpClient(new OIDCHttpClient("idp"));
+    }
+
+    private OIDCHttpClient configureHttpClient(OIDCHttpClient httpClient) {
+        httpClient.setMaxTotal(httpPropertyResolver.getProperty("maxTotal", Integer.class, OIDCHttpClient.DEFAULT_MAX_TOTAL));
+        httpClient.setMaxPerRoute(httpPropertyResolver.getProperty("maxPerRoute", Integer.class, OIDCHttpClient.DEFAULT_MAX_PER_ROUTE));
+        httpClient.setConnectTimeout(httpPropertyResolver.getProperty("connectTimeout", Integer.class, OIDCHttpClient.DEFAULT_CONNECT_TIMEOUT));
+        httpClient.setReadTimeout(httpPropertyResolver.getProperty("readTimeout", Integer.class, OIDCHttpClient.DEFAULT_READ_TIMEOUT));
+        httpClient.setConnectionRequestTimeout(httpPropertyResolver.getProperty("connectionRequestTimeout", Integer.class, OIDCHttpClient.DEFAULT_CONNECTION_REQUEST_TIMEOUT));
+        httpClient.setIdleTimeout(httpPropertyResolver.getProperty("idleTimeout", Integer.class, OIDCHttpClient.DEFAULT_IDLE_TIMEOUT));
+        httpClient.setEvictionInterval(httpPropertyResolver.getProperty("evictionInterval", Integer.class, OIDCHttpClient.DEFAULT_EVICTION_INTERVAL));
+        httpClient.setMetricRegistry(metricRegistry);
+        return httpClient;
+    }
     
+    /**
+     * Runs the token exchange and id token validation of async logins, off the container threads.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor oidcLoginExecutor() {
+        return createLoginExecutor("oidc-login-");
+    }
+
+    /**
+     * Runs the userinfo requests of async logins. Kept apart from the login executor so that a
+     * login task never waits on work queued behind other logins.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor oidcUserInfoExecutor() {
+        return createLoginExecutor("oidc-userinfo-");
+    }
+
+    private ThreadPoolTaskExecutor createLoginExecutor(String threadNamePrefix) {
+        log.debug("Creating OIDC login executor {}", threadNamePrefix);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(asyncPropertyResolver.getProperty("corePoolSize", Integer.class, 4));
+        executor.setMaxPoolSize(asyncPropertyResolver.getProperty("maxPoolSize", Integer.class, 50));
+        executor.setQueueCapacity(asyncPropertyResolver.getProperty("queueCapacity", Integer.class, 500));
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
+    public boolean isAsyncLoginEnabled() {
+        return asyncPropertyResolver.getProperty("enabled", Boolean.class, true);
+    }
+
+    public long getAsyncLoginTimeout() {
+        return asyncPropertyResolver.getProperty("timeout", Long.class, 30000L);
+    }
+
+    /**
+     * Where the state of a login in progress is kept: "session" (default) or "cookie", which needs no
+     * server side session until the user is authenticated. Cookies are sealed with
+     * <code>openidconnect.state.secret</code>, which has no default.
+     */
+    @Bean
+    public OIDCLoginStateStore oidcLoginStateStore() {
+        String mode = statePropertyResolver.getProperty("mode", "session");
+        if ("cookie".equalsIgnoreCase(mode)) {
+            log.debug("Keeping OIDC login state in sealed cookies");
+            String secret = statePropertyResolver.getProperty("secret");
+            if (!StringUtils.hasText(secret)) {
+                throw new IllegalStateException("openidconnect.state.secret must be set to keep the login state in cookies");
+            }
+            CookieLoginStateStore store = new CookieLoginStateStore(secret, OIDCAuthFilter.FILTER_PROCESSES_URL);
+            store.setTimeToLive(statePropertyResolver.getProperty("timeToLive", Integer.class, CookieLoginStateStore.DEFAULT_TIME_TO_LIVE));
+            return store;
+        }
+        log.debug("Keeping OIDC login state in the HTTP session");
+        return new HttpSessionLoginStateStore();
+    }
+
     @Bean
     public OIDCConfigurer oidConfigurer(){
 		return new OIDCConfigurer();
@@ -81,58 +203,65 @@ public class OpendIDConnectConfiguration implements EnvironmentAware{
     	
     }
         
+    /**
+     * The issuers we accept logins from, configured under <code>openidconnect.issuers.&lt;id&gt;.*</code>.
+     * Without that block, the single issuer configured directly under <code>openidconnect.*</code> is
+     * registered as DUMMYSSO.
+     */
     @Bean
-    public StaticSingleIssuerService staticIssuerService(){
-    	log.debug("Configuring staticIssuerService");
-    	StaticSingleIssuerService issuerService = new StaticSingleIssuerService();
-    	issuerService.setIssuer(propertyResolver.getProperty(PROP_ISSUERURI));
-		return issuerService;
-    	
-    }
-    
-    @Bean
-    public StaticServerConfigurationService staticServerConfigurationService(){
-    	log.debug("Configuring staticServerConfigurationService");
-    	StaticServerConfigurationService serverConfig = new StaticServerConfigurationService();
-    	
-    	ServerConfiguration serverCfg = new ServerConfiguration();
-    	serverCfg.setIssuer(propertyResolver.getProperty(PROP_ISSUER));
-    	serverCfg.setTokenEndpointUri(propertyResolver.getProperty(PROP_TOKENEPURI));
-    	serverCfg.setAuthorizationEndpointUri(propertyResolver.getProperty(PROP_AUTHEPURI));
-    	serverCfg.setUserInfoUri(propertyResolver.getProperty(PROP_USEREPURI));
-    	Map<String, ServerConfiguration> servers = new HashMap<String, ServerConfiguration>();
-		servers.put(propertyResolver.getProperty(PROP_ISSUERURI), serverCfg);
-    	
-		serverConfig.setServers(servers);
-    	
-    	return serverConfig;
+    public OIDCIssuerRegistry oidcIssuerRegistry() {
+        log.debug("Configuring OIDC issuer registry");
+        List<OIDCIssuerProperties> issuers = new ArrayList<>();
+        Set<String> ids = new LinkedHashSet<>();
+        for (String key : propertyResolver.getSubProperties(PROP_ISSUERS).keySet()) {
+            ids.add(key.substring(0, key.indexOf('.') > 0 ? key.indexOf('.') : key.length()));
+        }
+        for (String id : ids) {
+            issuers.add(issuerProperties(id, new RelaxedPropertyResolver(env, ENV_OPENIDCONNECT + PROP_ISSUERS + id + ".")));
+        }
+        if (issuers.isEmpty()) {
+            issuers.add(issuerProperties(ExternalAccountProvider.DUMMYSSO.name(), propertyResolver));
+        }
+
+        OIDCIssuerRegistry registry = new OIDCIssuerRegistry(new OIDCIssuerRegistry.ResourceFactory() {
+
+            @Override
+            public OIDCHttpClient createHttpClient(String issuerId) {
+                // prefixed, so an issuer id cannot clash with the shared pools in the metric names
+                OIDCHttpClient httpClient = configureHttpClient(new OIDCHttpClient("issuer-" + issuerId));
+                httpClient.afterPropertiesSet();
+                return httpClient;
+            }
+
+            @Override
+            public OIDCKeyStore createKeyStore(String issuerId, String jwksUri, OIDCHttpClient httpClient) {
+                OIDCKeyStore keyStore = new OIDCKeyStore(issuerId, jwksUri, httpClient);
+                keyStore.setRefreshInterval(propertyResolver.getProperty("jwks.refreshInterval", Long.class, OIDCKeyStore.DEFAULT_REFRESH_INTERVAL));
+                keyStore.setMinRefetchInterval(propertyResolver.getProperty("jwks.minRefetchInterval", Long.class, OIDCKeyStore.DEFAULT_MIN_REFETCH_INTERVAL));
+                keyStore.setMetricRegistry(metricRegistry);
+                keyStore.afterPropertiesSet();
+                return keyStore;
+            }
+        }, issuers);
+        registry.setDefaultIssuerId(propertyResolver.getProperty("defaultIssuer", issuers.get(0).getId()));
+        registry.setDiscoveryRefreshInterval(propertyResolver.getProperty("discoveryRefreshInterval", Long.class, OIDCIssuerRegistry.DEFAULT_DISCOVERY_REFRESH_INTERVAL));
+        return registry;
     }
-    
-    @Bean
-    public StaticClientConfigurationService staticClientConfigurationService(){
-    	log.debug("Configuring staticClientConfigurationService");
-    	
-    	StaticClientConfigurationService clientConfig = new StaticClientConfigurationService();
-    	Map<String, RegisteredClient> clients = new HashMap<String,RegisteredClient>();
-    	
-    	RegisteredClient clientCfg = new RegisteredClient();
-    	clientCfg.setClientId(propertyResolver.getProperty(PROP_CLIENTID));
-    	clientCfg.setClientSecret(propertyResolver.getProperty(PROP_CLIENTSECRET));
-    	clientCfg.setTokenEndpointAuthMethod(AuthMethod.SECRET_BASIC);
-
-    	Set<String> scopes = new HashSet<String>();
-    	scopes.add("openid");
-		clientCfg.setScope(scopes);
-		
-		Set<String> redirectUris = new HashSet<String>();
-		redirectUris.add(propertyResolver.getProperty(PROP_REDIRECTURI));
-		clientCfg.setRedirectUris(redirectUris);
-    	
-		clients.put(propertyResolver.getProperty(PROP_ISSUER), clientCfg);
-    	clientConfig.setClients(clients);
-    	
-    	return clientConfig;
-    	
+
+    private OIDCIssuerProperties issuerProperties(String id, RelaxedPropertyResolver resolver) {
+        OIDCIssuerProperties properties = new OIDCIssuerProperties();
+        properties.setId(id);
+        properties.setIssuer(resolver.getProperty(PROP_ISSUER));
+        properties.setIssuerUri(resolver.getProperty(PROP_ISSUERURI));
+        properties.setDiscovery(resolver.getProperty("discovery", Boolean.class, false));
+        properties.setAuthorizationEndpointUri(resolver.getProperty(PROP_AUTHEPURI));
+        properties.setTokenEndpointUri(resolver.getProperty(PROP_TOKENEPURI));
+        properties.setUserInfoUri(resolver.getProperty(PROP_USEREPURI));
+        properties.setJwksUri(resolver.getProperty(PROP_JWKSURI));
+        properties.setClientId(resolver.getProperty(PROP_CLIENTID));
+        properties.setClientSecret(resolver.getProperty(PROP_CLIENTSECRET));
+        properties.setRedirectUri(resolver.getProperty(PROP_REDIRECTURI));
+        return properties;
     }
     
     @Bean
@@ -148,12 +277,18 @@ public class OpendIDConnectConfiguration implements EnvironmentAware{
     	
     }
     
-    @Bean
-    public JWKSetCacheService validatorCache(){
-    	return new JWKSetCacheService();
-    	
+    /**
+     * @return the cache of verified id tokens, or null when no cache manager is available
+     */
+    public OIDCVerifiedTokenCache verifiedTokenCache() {
+        Cache cache = cacheManager != null ? cacheManager.getCache(OIDCVerifiedTokenCache.CACHE_NAME) : null;
+        if (cache == null) {
+            return null;
+        }
+        return new OIDCVerifiedTokenCache((Ehcache) cache.getNativeCache());
     }
 
+
  
 
 }
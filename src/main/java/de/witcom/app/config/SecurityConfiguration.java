@@ -1,10 +1,14 @@
 package de.witcom.app.config;
 
 import de.witcom.app.security.*;
-import de.witcom.app.web.filter.CsrfCookieGeneratorFilter;
 
 import de.witcom.app.config.OpendIDConnectConfiguration;
 
+import net.sf.ehcache.Ehcache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -20,11 +24,13 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.cache.EhCacheBasedUserCache;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.authentication.RememberMeServices;
-import org.springframework.security.web.csrf.CsrfFilter;
 
 import javax.inject.Inject;
 
@@ -32,6 +38,8 @@ import javax.inject.Inject;
 @EnableWebSecurity
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
+    public static final String USER_CACHE = "de.witcom.app.security.UserDetails";
+
     @Inject
     private Environment env;
 
@@ -56,6 +64,23 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     private OpendIDConnectConfiguration oidConfig;
     
     
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+
+    /**
+     * Users loaded by the {@link de.witcom.app.security.UserDetailsService}, not cached without a cache manager.
+     */
+    @Bean
+    public UserCache userCache() {
+        Cache cache = cacheManager != null ? cacheManager.getCache(USER_CACHE) : null;
+        if (cache == null) {
+            return new NullUserCache();
+        }
+        EhCacheBasedUserCache userCache = new EhCacheBasedUserCache();
+        userCache.setCache((Ehcache) cache.getNativeCache());
+        return userCache;
+    }
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -83,7 +108,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
-            .addFilterAfter(new CsrfCookieGeneratorFilter(), CsrfFilter.class)
+            .csrf()
+            .csrfTokenRepository(new CookieCsrfTokenRepository())
+        .and()
             .exceptionHandling()
             .authenticationEntryPoint(authenticationEntryPoint)
         .and()
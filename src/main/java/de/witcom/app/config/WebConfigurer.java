@@ -4,6 +4,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.servlet.InstrumentedFilter;
 import com.codahale.metrics.servlets.MetricsServlet;
 import de.witcom.app.web.filter.CachingHttpHeadersFilter;
+import de.witcom.app.web.filter.StaticAssetCache;
 import de.witcom.app.web.filter.StaticResourcesProductionFilter;
 import de.witcom.app.web.filter.gzip.GZipServletFilter;
 import org.slf4j.Logger;
@@ -47,8 +48,11 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
             initMetrics(servletContext, disps);
         }
         if (env.acceptsProfiles(Constants.SPRING_PROFILE_PRODUCTION)) {
-            initCachingHttpHeadersFilter(servletContext, disps);
-            initStaticResourcesProductionFilter(servletContext, disps);
+            StaticAssetCache assetCache = new StaticAssetCache(servletContext, StaticResourcesProductionFilter.ROOT,
+                env.getProperty("jhipster.staticAssets.maxSize", Long.class, 32L * 1024 * 1024),
+                env.getProperty("jhipster.staticAssets.maxFileSize", Long.class, 2L * 1024 * 1024));
+            initCachingHttpHeadersFilter(servletContext, disps, assetCache);
+            initStaticResourcesProductionFilter(servletContext, disps, assetCache);
             initGzipFilter(servletContext, disps);
         }
         if (env.acceptsProfiles(Constants.SPRING_PROFILE_DEVELOPMENT)) {
@@ -77,6 +81,9 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
         log.debug("Registering GZip Filter");
         FilterRegistration.Dynamic compressingFilter = servletContext.addFilter("gzipFilter", new GZipServletFilter());
         Map<String, String> parameters = new HashMap<>();
+        // large API responses are compressed while they are written, not held in memory
+        parameters.put("streaming", "true");
+        parameters.put("threshold", env.getProperty("jhipster.gzip.threshold", "1024"));
         compressingFilter.setInitParameters(parameters);
         compressingFilter.addMappingForUrlPatterns(disps, true, "*.css");
         compressingFilter.addMappingForUrlPatterns(disps, true, "*.json");
@@ -93,12 +100,13 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
      * Initializes the static resources production Filter.
      */
     private void initStaticResourcesProductionFilter(ServletContext servletContext,
-                                                     EnumSet<DispatcherType> disps) {
+                                                     EnumSet<DispatcherType> disps,
+                                                     StaticAssetCache assetCache) {
 
         log.debug("Registering static resources production Filter");
         FilterRegistration.Dynamic staticResourcesProductionFilter =
                 servletContext.addFilter("staticResourcesProductionFilter",
-                        new StaticResourcesProductionFilter());
+                        new StaticResourcesProductionFilter(assetCache));
 
         staticResourcesProductionFilter.addMappingForUrlPatterns(disps, true, "/");
         staticResourcesProductionFilter.addMappingForUrlPatterns(disps, true, "/index.html");
@@ -111,11 +119,12 @@ public class WebConfigurer implements ServletContextInitializer, EmbeddedServlet
      * Initializes the cachig HTTP Headers Filter.
      */
     private void initCachingHttpHeadersFilter(ServletContext servletContext,
-                                              EnumSet<DispatcherType> disps) {
+                                              EnumSet<DispatcherType> disps,
+                                              StaticAssetCache assetCache) {
         log.debug("Registering Caching HTTP Headers Filter");
         FilterRegistration.Dynamic cachingHttpHeadersFilter =
                 servletContext.addFilter("cachingHttpHeadersFilter",
-                        new CachingHttpHeadersFilter());
+                        new CachingHttpHeadersFilter(assetCache));
 
         cachingHttpHeadersFilter.addMappingForUrlPatterns(disps, true, "/assets/*");
         cachingHttpHeadersFilter.addMappingForUrlPatterns(disps, true, "/scripts/*");
@@ -0,0 +1,198 @@
+package de.witcom.app.config.audit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Counts audit events per type over the last 60 minutes and 24 hours, and per principal and type over the
+ * last 24 hours, as they are recorded, so that statistics never query the audit table.
+ * <p/>
+ * Counters are kept in memory: they only cover the events recorded by this node since it started. The number
+ * of principals tracked is bounded by <code>jhipster.audit.statistics.maxPrincipals</code>; events of further
+ * principals are only counted per type. Per type, the counts of the current minute and of the last hour are
+ * published as gauges.
+ */
+@Component
+public class AuditEventStatistics {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventStatistics.class);
+
+    public static final int DEFAULT_MAX_PRINCIPALS = 10000;
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final ConcurrentMap<String, TypeCounters> types = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, RollingCounter>> principals = new ConcurrentHashMap<>();
+
+    private final int maxPrincipals;
+
+    private final int stripes = Runtime.getRuntime().availableProcessors();
+
+    private final Meter untracked = new Meter();
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    public AuditEventStatistics(Environment env) {
+        this.maxPrincipals = env.getProperty("jhipster.audit.statistics.maxPrincipals", Integer.class, DEFAULT_MAX_PRINCIPALS);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (metricRegistry != null) {
+            metricRegistry.register(name(AuditEventStatistics.class, "principals"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return principals.size();
+                }
+            });
+            metricRegistry.register(name(AuditEventStatistics.class, "untracked"), untracked);
+        }
+    }
+
+    public void record(AuditEvent event) {
+        long timestamp = event.getTimestamp().getTime();
+        TypeCounters counters = typeCounters(event.getType());
+        counters.minutes.increment(timestamp);
+        counters.hours.increment(timestamp);
+
+        ConcurrentMap<String, RollingCounter> byType = principals.get(event.getPrincipal());
+        if (byType == null) {
+            if (principals.size() >= maxPrincipals) {
+                untracked.mark();
+                return;
+            }
+            ConcurrentMap<String, RollingCounter> created = new ConcurrentHashMap<>(4);
+            byType = principals.putIfAbsent(event.getPrincipal(), created);
+            if (byType == null) {
+                byType = created;
+            }
+        }
+        RollingCounter counter = byType.get(event.getType());
+        if (counter == null) {
+            RollingCounter created = new RollingCounter(24, HOUR, 1);
+            counter = byType.putIfAbsent(event.getType(), created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment(timestamp);
+    }
+
+    /**
+     * @return per type, the counts of the last 60 minutes, oldest first
+     */
+    public Map<String, long[]> getPerMinute() {
+        long now = System.currentTimeMillis();
+        Map<String, long[]> result = new TreeMap<>();
+        for (Map.Entry<String, TypeCounters> entry : types.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().minutes.series(now));
+        }
+        return result;
+    }
+
+    /**
+     * @return per type, the counts of the last 24 hours, oldest first
+     */
+    public Map<String, long[]> getPerHour() {
+        long now = System.currentTimeMillis();
+        Map<String, long[]> result = new TreeMap<>();
+        for (Map.Entry<String, TypeCounters> entry : types.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().hours.series(now));
+        }
+        return result;
+    }
+
+    /**
+     * @return per type, the counts of the principal over the last 24 hours, oldest first, empty if the
+     * principal is not tracked
+     */
+    public Map<String, long[]> getPerHour(String principal) {
+        long now = System.currentTimeMillis();
+        Map<String, long[]> result = new TreeMap<>();
+        ConcurrentMap<String, RollingCounter> byType = principals.get(principal);
+        if (byType != null) {
+            for (Map.Entry<String, RollingCounter> entry : byType.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().series(now));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops tracking the principals without events in the last 24 hours.
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void removeIdlePrincipals() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Iterator<ConcurrentMap<String, RollingCounter>> it = principals.values().iterator(); it.hasNext(); ) {
+            boolean idle = true;
+            for (RollingCounter counter : it.next().values()) {
+                idle &= counter.isIdle(now);
+            }
+            if (idle) {
+                it.remove();
+                removed++;
+            }
+        }
+        log.debug("Removed {} idle principals from audit statistics", removed);
+    }
+
+    private TypeCounters typeCounters(final String type) {
+        TypeCounters counters = types.get(type);
+        if (counters == null) {
+            TypeCounters created = new TypeCounters();
+            counters = types.putIfAbsent(type, created);
+            if (counters == null) {
+                counters = created;
+                if (metricRegistry != null) {
+                    final TypeCounters registered = created;
+                    metricRegistry.register(name(AuditEventStatistics.class, type, "current-minute"), new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return registered.minutes.current(System.currentTimeMillis());
+                        }
+                    });
+                    metricRegistry.register(name(AuditEventStatistics.class, type, "last-hour"), new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return registered.minutes.total(System.currentTimeMillis());
+                        }
+                    });
+                }
+            }
+        }
+        return counters;
+    }
+
+    private class TypeCounters {
+
+        private final RollingCounter minutes = new RollingCounter(60, MINUTE, stripes);
+
+        private final RollingCounter hours = new RollingCounter(24, HOUR, stripes);
+    }
+}
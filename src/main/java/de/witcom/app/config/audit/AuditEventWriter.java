@@ -0,0 +1,249 @@
+package de.witcom.app.config.audit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import de.witcom.app.async.RingBuffer;
+import de.witcom.app.domain.PersistentAuditEvent;
+import de.witcom.app.domain.util.JSONStringMapConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Writes audit events in the background, so that recording an event never waits for the database.
+ * <p/>
+ * Events are queued in a bounded ring buffer and written by a single thread, in one transaction per batch,
+ * as soon as <code>batchSize</code> events are queued or <code>flushInterval</code> has passed. When the
+ * buffer is full, producers wait up to <code>offerTimeout</code> for room and then drop the event.
+ * <p/>
+ * A batch that could not be written is kept and retried on the next flushes, before anything else is taken
+ * from the buffer, so events queue up while the database is down. It is only given up after
+ * <code>maxRetries</code> failed attempts once the buffer is full, to make room for newer events. Queue size,
+ * written, dropped and failed events, and the number of times producers had to wait, are published as
+ * metrics. Queued events are written on shutdown, unless the database is still failing.
+ */
+@Component
+public class AuditEventWriter {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventWriter.class);
+
+    private static final String INSERT_EVENT_SQL =
+        "insert into T_PERSISTENT_AUDIT_EVENT (principal, event_date, event_bucket, event_type, event_data) values (?, ?, ?, ?, ?)";
+
+    private final RingBuffer<PersistentAuditEvent> buffer;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final long offerTimeout;
+
+    private final int maxRetries;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    private final Meter written = new Meter();
+
+    private final Meter dropped = new Meter();
+
+    private final Meter failed = new Meter();
+
+    private final Meter backPressure = new Meter();
+
+    // the batch whose last write failed, and how many times it has been tried; guarded by flush()
+    private volatile List<PersistentAuditEvent> retained;
+
+    private int attempts;
+
+    private volatile boolean running;
+
+    private Thread writerThread;
+
+    @Inject
+    public AuditEventWriter(Environment env, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.buffer = new RingBuffer<>(env.getProperty("jhipster.audit.bufferSize", Integer.class, 8192));
+        this.batchSize = env.getProperty("jhipster.audit.batchSize", Integer.class, 200);
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(env.getProperty("jhipster.audit.flushInterval", Long.class, 1000L));
+        this.offerTimeout = TimeUnit.MILLISECONDS.toNanos(env.getProperty("jhipster.audit.offerTimeout", Long.class, 10L));
+        this.maxRetries = env.getProperty("jhipster.audit.maxRetries", Integer.class, 10);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (metricRegistry != null) {
+            metricRegistry.register(name(AuditEventWriter.class, "queued"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    List<PersistentAuditEvent> batch = retained;
+                    return buffer.size() + (batch == null ? 0 : batch.size());
+                }
+            });
+            metricRegistry.register(name(AuditEventWriter.class, "written"), written);
+            metricRegistry.register(name(AuditEventWriter.class, "dropped"), dropped);
+            metricRegistry.register(name(AuditEventWriter.class, "failed"), failed);
+            metricRegistry.register(name(AuditEventWriter.class, "back-pressure"), backPressure);
+        }
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "audit-event-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the event for writing.
+     *
+     * @return false if the event has been dropped because the buffer stayed full
+     */
+    public boolean add(PersistentAuditEvent event) {
+        if (buffer.offer(event)) {
+            if (buffer.size() >= batchSize) {
+                LockSupport.unpark(writerThread);
+            }
+            return true;
+        }
+        backPressure.mark();
+        LockSupport.unpark(writerThread);
+        long deadline = System.nanoTime() + offerTimeout;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (buffer.offer(event)) {
+                return true;
+            }
+        }
+        dropped.mark();
+        log.warn("Audit event buffer full, dropped {} event of {}", event.getAuditEventType(), event.getPrincipal());
+        return false;
+    }
+
+    /**
+     * Stops the writer thread and writes the events still queued, until a write fails.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            writerThread.join(TimeUnit.NANOSECONDS.toMillis(flushInterval) + 5000);
+        }
+        int flushed = 0;
+        int count;
+        while ((count = flush()) > 0) {
+            flushed += count;
+        }
+        int unwritten = unwritten();
+        if (unwritten > 0) {
+            failed.mark(unwritten);
+            log.error("Audit event writer stopped, {} queued events written, {} could not be written", flushed, unwritten);
+        } else {
+            log.info("Audit event writer stopped, {} queued events written", flushed);
+        }
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.nanoTime();
+        while (running) {
+            long wait = flushInterval - (System.nanoTime() - lastFlush);
+            // a failed batch is only retried once per flush interval
+            if ((buffer.size() < batchSize || retained != null) && wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            flush();
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    /**
+     * Writes up to one batch: the batch that failed last time, or the next one from the buffer. Only one
+     * thread drains the buffer at a time.
+     *
+     * @return the number of events written
+     */
+    synchronized int flush() {
+        List<PersistentAuditEvent> batch = retained;
+        if (batch == null) {
+            batch = new ArrayList<>(Math.min(batchSize, buffer.size()));
+            buffer.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+        }
+        final List<PersistentAuditEvent> events = batch;
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    write(events);
+                }
+            });
+        } catch (RuntimeException e) {
+            // also when no transaction can be started, the writer must survive the database being down
+            attempts++;
+            if (attempts >= maxRetries && buffer.size() >= buffer.capacity()) {
+                failed.mark(events.size());
+                log.error("Failed to write {} audit events after {} attempts, dropping them: ", events.size(), attempts, e);
+                retained = null;
+                attempts = 0;
+            } else {
+                log.error("Failed to write {} audit events, retrying with the next flush: ", events.size(), e);
+                retained = events;
+            }
+            return 0;
+        }
+        written.mark(events.size());
+        retained = null;
+        attempts = 0;
+        return events.size();
+    }
+
+    /**
+     * @return the number of events still queued, including a batch that failed
+     */
+    private synchronized int unwritten() {
+        return buffer.size() + (retained == null ? 0 : retained.size());
+    }
+
+    /**
+     * Inserts the events, with their data as JSON, in one JDBC batch.
+     */
+    private void write(List<PersistentAuditEvent> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (PersistentAuditEvent event : batch) {
+            rows.add(new Object[]{event.getPrincipal(), new Timestamp(event.getAuditEventDate().toDate().getTime()),
+                event.getAuditEventBucket(), event.getAuditEventType(), JSONStringMapConverter.toJson(event.getData())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, rows);
+    }
+}
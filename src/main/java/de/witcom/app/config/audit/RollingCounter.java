@@ -0,0 +1,127 @@
+package de.witcom.app.config.audit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in a ring of fixed-length time slots, for example the last 60 minutes.
+ * <p/>
+ * Counts are kept in primitive arrays, spread over stripes picked by thread so that concurrent increments
+ * rarely hit the same cache line. A slot is reset by the first increment after it has expired, and
+ * increments racing with the reset may be lost, so counts are approximate.
+ */
+class RollingCounter {
+
+    /**
+     * Longs per cache line.
+     */
+    private static final int CACHE_LINE = 8;
+
+    private final int slots;
+
+    private final long slotMillis;
+
+    private final int stripes;
+
+    private final int padding;
+
+    private final AtomicLongArray counts;
+
+    private final AtomicLongArray epochs;
+
+    /**
+     * @param stripes rounded up to the next power of two
+     */
+    RollingCounter(int slots, long slotMillis, int stripes) {
+        this.slots = slots;
+        this.slotMillis = slotMillis;
+        stripes = Math.max(1, stripes);
+        this.stripes = Integer.highestOneBit(stripes) == stripes ? stripes : Integer.highestOneBit(stripes) << 1;
+        // stripes are a cache line apart, a single stripe needs no padding
+        this.padding = this.stripes > 1 ? CACHE_LINE : 1;
+        this.counts = new AtomicLongArray(slots * this.stripes * padding);
+        this.epochs = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            epochs.set(i, -1);
+        }
+    }
+
+    void increment(long timestamp) {
+        long epoch = timestamp / slotMillis;
+        int slot = (int) (epoch % slots);
+        long current = epochs.get(slot);
+        if (current < epoch) {
+            if (epochs.compareAndSet(slot, current, epoch)) {
+                for (int i = 0; i < stripes; i++) {
+                    counts.set(index(slot, i), 0);
+                }
+            }
+        } else if (current > epoch) {
+            // older than the ring
+            return;
+        }
+        counts.incrementAndGet(index(slot, (int) Thread.currentThread().getId() & (stripes - 1)));
+    }
+
+    /**
+     * @return the counts of the slots, oldest first, the last one being the current slot
+     */
+    long[] series(long now) {
+        long epoch = now / slotMillis;
+        long[] series = new long[slots];
+        for (int i = 0; i < slots; i++) {
+            long slotEpoch = epoch - slots + 1 + i;
+            series[i] = count(slotEpoch);
+        }
+        return series;
+    }
+
+    /**
+     * @return the count of the slot including <code>now</code>
+     */
+    long current(long now) {
+        return count(now / slotMillis);
+    }
+
+    /**
+     * @return the sum of all slots within the ring
+     */
+    long total(long now) {
+        long total = 0;
+        for (long count : series(now)) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return true if no slot of the ring has been incremented recently
+     */
+    boolean isIdle(long now) {
+        long oldest = now / slotMillis - slots + 1;
+        for (int i = 0; i < slots; i++) {
+            if (epochs.get(i) >= oldest) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long count(long epoch) {
+        if (epoch < 0) {
+            return 0;
+        }
+        int slot = (int) (epoch % slots);
+        if (epochs.get(slot) != epoch) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = 0; i < stripes; i++) {
+            count += counts.get(index(slot, i));
+        }
+        return count;
+    }
+
+    private int index(int slot, int stripe) {
+        return (slot * stripes + stripe) * padding;
+    }
+}
@@ -0,0 +1,259 @@
+package de.witcom.app.config.cache;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.hibernate.Cache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the second level cache coherent across the nodes of the cluster: the entities updated or deleted,
+ * and the collections changed, on this node are evicted from the caches of the other nodes, and so are the
+ * entries removed from the replicated Ehcache caches, such as the cached user details.
+ * <p/>
+ * <p>
+ * Invalidations are collected per transaction and sent as one batch once it has committed, or immediately
+ * outside a transaction. Code that changes rows without Hibernate, such as the bulk deletes, evicts them
+ * itself and passes them to {@link #invalidate(Invalidation)}. Without transport, nothing is sent.
+ * </p>
+ */
+public class ClusterCacheInvalidator implements PostUpdateEventListener, PostDeleteEventListener,
+    PostCollectionUpdateEventListener, PostCollectionRemoveEventListener, PostCollectionRecreateEventListener,
+    InvalidationTransport.Receiver {
+
+    private final Logger log = LoggerFactory.getLogger(ClusterCacheInvalidator.class);
+
+    // evictions of received invalidations must not be sent back
+    private static final ThreadLocal<Boolean> receiving = new ThreadLocal<>();
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final CacheManager cacheManager;
+
+    private final InvalidationTransport transport;
+
+    /**
+     * @param transport the transport to the other nodes, null on a single node
+     */
+    public ClusterCacheInvalidator(SessionFactoryImplementor sessionFactory, CacheManager cacheManager,
+                                   InvalidationTransport transport) {
+        this.sessionFactory = sessionFactory;
+        this.cacheManager = cacheManager;
+        this.transport = transport;
+    }
+
+    /**
+     * Registers the Hibernate listeners and the listeners of the replicated caches, and joins the cluster.
+     *
+     * @param replicatedCaches the Ehcache caches whose removals are replicated
+     */
+    public void start(Collection<String> replicatedCaches) throws IOException {
+        if (transport == null) {
+            return;
+        }
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        for (String name : replicatedCaches) {
+            Ehcache cache = cacheManager.getEhcache(name);
+            if (cache == null) {
+                log.warn("Cache {} does not exist, its removals are not replicated", name);
+                continue;
+            }
+            cache.getCacheEventNotificationService().registerListener(new RemovalListener());
+        }
+        transport.start(this);
+    }
+
+    public void close() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalidateEntity(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        invalidateEntity(event.getPersister(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        invalidateCollection(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        invalidateCollection(event);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        invalidateCollection(event);
+    }
+
+    @Override
+    public void receive(List<Invalidation> invalidations) {
+        log.debug("Received {} cache invalidations", invalidations.size());
+        Cache cache = sessionFactory.getCache();
+        receiving.set(Boolean.TRUE);
+        try {
+            for (Invalidation invalidation : invalidations) {
+                apply(cache, invalidation);
+            }
+        } finally {
+            receiving.remove();
+        }
+    }
+
+    private void apply(Cache cache, Invalidation invalidation) {
+        if (invalidation.getType() != Invalidation.Type.CACHE) {
+            evict(cache, invalidation);
+            return;
+        }
+        Ehcache ehcache = cacheManager.getEhcache(invalidation.getName());
+        if (ehcache == null) {
+            return;
+        }
+        if (invalidation.getKey() != null) {
+            ehcache.remove(invalidation.getKey());
+        } else {
+            ehcache.removeAll();
+        }
+    }
+
+    /**
+     * Evicts a Hibernate entity, collection or natural id from the second level cache of this node.
+     */
+    public static void evict(Cache cache, Invalidation invalidation) {
+        String name = invalidation.getName();
+        Serializable key = invalidation.getKey();
+        switch (invalidation.getType()) {
+            case ENTITY:
+                if (key != null) {
+                    cache.evictEntity(name, key);
+                } else {
+                    cache.evictEntityRegion(name);
+                }
+                break;
+            case COLLECTION:
+                if (key != null) {
+                    cache.evictCollection(name, key);
+                } else {
+                    cache.evictCollectionRegion(name);
+                }
+                break;
+            case NATURAL_ID:
+                cache.evictNaturalIdRegion(name);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a Hibernate region: " + invalidation);
+        }
+    }
+
+    private void invalidateEntity(EntityPersister persister, Serializable id) {
+        if (persister.hasCache()) {
+            invalidate(new Invalidation(Invalidation.Type.ENTITY, persister.getEntityName(), id));
+        }
+        if (persister.hasNaturalIdCache()) {
+            // natural id keys are not sent, their region is evicted
+            invalidate(new Invalidation(Invalidation.Type.NATURAL_ID, persister.getEntityName(), null));
+        }
+    }
+
+    private void invalidateCollection(AbstractCollectionEvent event) {
+        String role = event.getCollection().getRole();
+        if (role != null && event.getSession().getFactory().getCollectionPersister(role).hasCache()) {
+            invalidate(new Invalidation(Invalidation.Type.COLLECTION, role, event.getAffectedOwnerIdOrNull()));
+        }
+    }
+
+    /**
+     * Sends an entry this node has evicted to the other nodes, with the invalidations of the current
+     * transaction once it has committed.
+     */
+    public void invalidate(Invalidation invalidation) {
+        if (transport == null || receiving.get() != null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            transport.send(Collections.singletonList(invalidation));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<Invalidation> batch = (Set<Invalidation>) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            final Set<Invalidation> created = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    transport.send(new ArrayList<>(created));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ClusterCacheInvalidator.this);
+                }
+            });
+            batch = created;
+        }
+        batch.add(invalidation);
+    }
+
+    private class RemovalListener extends CacheEventListenerAdapter {
+
+        @Override
+        public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+            Object key = element.getObjectKey();
+            invalidate(new Invalidation(Invalidation.Type.CACHE, cache.getName(),
+                key instanceof Serializable ? (Serializable) key : null));
+        }
+
+        @Override
+        public void notifyRemoveAll(Ehcache cache) {
+            invalidate(new Invalidation(Invalidation.Type.CACHE, cache.getName(), null));
+        }
+    }
+}
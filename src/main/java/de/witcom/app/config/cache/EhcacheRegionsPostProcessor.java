@@ -0,0 +1,140 @@
+package de.witcom.app.config.cache;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.ConfigurationFactory;
+import net.sf.ehcache.config.PersistenceConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Creates the Ehcache singleton used by Hibernate from <code>ehcache.xml</code> and the regions declared under
+ * <code>cache.regions</code> in the <code>application-*.yml</code> files, before the entity manager factory
+ * builds its regions.
+ * <p/>
+ * <p>
+ * Each region may declare <code>maxBytesLocalHeap</code>, taken from the global heap pool
+ * <code>cache.ehcache.maxBytesLocalHeap</code>, <code>maxBytesLocalOffHeap</code>, <code>maxBytesLocalDisk</code>
+ * which adds a disk tier, <code>timeToLiveSeconds</code> and <code>timeToIdleSeconds</code>. The off-heap tier
+ * needs BigMemory: without it, off-heap budgets are ignored with a warning.
+ * </p>
+ */
+public class EhcacheRegionsPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware {
+
+    private final Logger log = LoggerFactory.getLogger(EhcacheRegionsPostProcessor.class);
+
+    private static final List<String> SETTINGS = Arrays.asList("maxBytesLocalHeap", "maxBytesLocalOffHeap",
+        "maxBytesLocalDisk", "timeToLiveSeconds", "timeToIdleSeconds");
+
+    private Environment env;
+
+    private RelaxedPropertyResolver propertyResolver;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.env = environment;
+        this.propertyResolver = new RelaxedPropertyResolver(environment, "cache.regions.");
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        log.debug("Configuring Ehcache regions");
+        Configuration configuration = configuration(true);
+        try {
+            CacheManager.create(configuration);
+        } catch (CacheException e) {
+            if (!usesOffHeap(configuration)) {
+                throw e;
+            }
+            log.warn("Off-heap store not available, ignoring the off-heap budgets of the cache regions: {}", e.getMessage());
+            CacheManager.create(configuration(false));
+        }
+    }
+
+    /**
+     * Applies the expiry of the region, or the default <code>cache.timeToLiveSeconds</code>, to a cache.
+     */
+    public static void configureExpiry(Environment env, String region, CacheConfiguration cacheConfiguration) {
+        String prefix = "cache.regions." + region + ".";
+        cacheConfiguration.setTimeToLiveSeconds(env.getProperty(prefix + "timeToLiveSeconds", Long.class,
+            env.getProperty("cache.timeToLiveSeconds", Long.class, 3600L)));
+        Long timeToIdle = env.getProperty(prefix + "timeToIdleSeconds", Long.class);
+        if (timeToIdle != null) {
+            cacheConfiguration.setTimeToIdleSeconds(timeToIdle);
+        }
+    }
+
+    private Configuration configuration(boolean offHeap) {
+        Configuration configuration = ConfigurationFactory.parseConfiguration();
+        configuration.setMaxBytesLocalHeap(env.getProperty("cache.ehcache.maxBytesLocalHeap", String.class, "16M"));
+        for (String region : regions()) {
+            CacheConfiguration cacheConfiguration = configuration.getCacheConfigurations().get(region);
+            if (cacheConfiguration == null) {
+                cacheConfiguration = new CacheConfiguration().name(region);
+                configuration.addCache(cacheConfiguration);
+            }
+            configure(region, cacheConfiguration, offHeap);
+        }
+        return configuration;
+    }
+
+    private void configure(String region, CacheConfiguration cacheConfiguration, boolean offHeap) {
+        String heap = propertyResolver.getProperty(region + ".maxBytesLocalHeap");
+        if (heap != null) {
+            cacheConfiguration.setMaxBytesLocalHeap(heap);
+        }
+        String offHeapBytes = propertyResolver.getProperty(region + ".maxBytesLocalOffHeap");
+        if (offHeap && offHeapBytes != null) {
+            cacheConfiguration.setOverflowToOffHeap(true);
+            cacheConfiguration.setMaxBytesLocalOffHeap(offHeapBytes);
+        }
+        String disk = propertyResolver.getProperty(region + ".maxBytesLocalDisk");
+        if (disk != null) {
+            // entries are only swapped to disk, the tier is dropped on restart
+            cacheConfiguration.persistence(new PersistenceConfiguration().strategy(PersistenceConfiguration.Strategy.LOCALTEMPSWAP));
+            cacheConfiguration.setMaxBytesLocalDisk(disk);
+        }
+        configureExpiry(env, region, cacheConfiguration);
+        log.debug("Cache region {}: heap {}, off-heap {}, disk {}, TTL {}s, TTI {}s", region, heap,
+            offHeap ? offHeapBytes : null, disk, cacheConfiguration.getTimeToLiveSeconds(),
+            cacheConfiguration.getTimeToIdleSeconds());
+    }
+
+    private boolean usesOffHeap(Configuration configuration) {
+        for (CacheConfiguration cacheConfiguration : configuration.getCacheConfigurations().values()) {
+            if (cacheConfiguration.isOverflowToOffHeap()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of the regions declared in the properties, which may contain dots
+     */
+    private Set<String> regions() {
+        Set<String> regions = new TreeSet<>();
+        for (String key : propertyResolver.getSubProperties("").keySet()) {
+            int separator = key.lastIndexOf('.');
+            if (separator > 0 && SETTINGS.contains(key.substring(separator + 1))) {
+                regions.add(key.substring(0, separator));
+            } else {
+                log.warn("Ignoring unknown cache region property cache.regions.{}", key);
+            }
+        }
+        return regions;
+    }
+}
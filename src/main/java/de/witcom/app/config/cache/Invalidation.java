@@ -0,0 +1,153 @@
+package de.witcom.app.config.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An entry to evict from the caches of the other nodes: a Hibernate entity, collection or natural id, or an
+ * entry of an Ehcache cache. Without key, the whole region is evicted.
+ * <p/>
+ * Only <code>Long</code>, <code>Integer</code> and <code>String</code> keys are sent over the wire, other keys
+ * are widened to their region.
+ */
+public final class Invalidation {
+
+    public enum Type {
+        ENTITY, COLLECTION, NATURAL_ID, CACHE
+    }
+
+    private static final int NONE = 0;
+
+    private static final int LONG = 1;
+
+    private static final int INTEGER = 2;
+
+    private static final int STRING = 3;
+
+    private final Type type;
+
+    private final String name;
+
+    private final Serializable key;
+
+    /**
+     * @param name the entity name, the collection role or the cache name
+     * @param key  the key of the entry, null for the whole region
+     */
+    public Invalidation(Type type, String name, Serializable key) {
+        this.type = type;
+        this.name = name;
+        this.key = key;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Serializable getKey() {
+        return key;
+    }
+
+    public static void write(DataOutput out, Collection<Invalidation> invalidations) throws IOException {
+        out.writeInt(invalidations.size());
+        for (Invalidation invalidation : invalidations) {
+            out.writeByte(invalidation.type.ordinal());
+            out.writeUTF(invalidation.name);
+            Serializable key = invalidation.key;
+            if (key instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) key);
+            } else if (key instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) key);
+            } else if (key instanceof String) {
+                out.writeByte(STRING);
+                out.writeUTF((String) key);
+            } else {
+                out.writeByte(NONE);
+            }
+        }
+    }
+
+    public static List<Invalidation> read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid invalidation count " + count);
+        }
+        List<Invalidation> invalidations = new ArrayList<>(Math.min(count, 1024));
+        Type[] types = Type.values();
+        for (int i = 0; i < count; i++) {
+            int type = in.readUnsignedByte();
+            if (type >= types.length) {
+                throw new IOException("Invalid invalidation type " + type);
+            }
+            String name = in.readUTF();
+            Serializable key;
+            int keyType = in.readUnsignedByte();
+            switch (keyType) {
+                case NONE:
+                    key = null;
+                    break;
+                case LONG:
+                    key = in.readLong();
+                    break;
+                case INTEGER:
+                    key = in.readInt();
+                    break;
+                case STRING:
+                    key = in.readUTF();
+                    break;
+                default:
+                    throw new IOException("Invalid key type " + keyType);
+            }
+            invalidations.add(new Invalidation(types[type], name, key));
+        }
+        return invalidations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        Invalidation that = (Invalidation) o;
+
+        if (type != that.type) {
+            return false;
+        }
+        if (!name.equals(that.name)) {
+            return false;
+        }
+        return key != null ? key.equals(that.key) : that.key == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + name.hashCode();
+        result = 31 * result + (key != null ? key.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Invalidation{" +
+            "type=" + type +
+            ", name='" + name + "'" +
+            ", key=" + key +
+            "}";
+    }
+}
@@ -0,0 +1,31 @@
+package de.witcom.app.config.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries batches of invalidations between the nodes of the cluster.
+ * <p/>
+ * Delivery is best effort: a node that misses a batch keeps stale entries until they expire.
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Receives the batches sent by the other nodes.
+     */
+    interface Receiver {
+
+        void receive(List<Invalidation> invalidations);
+    }
+
+    /**
+     * Joins the cluster, batches sent by the other nodes are then passed to the receiver.
+     */
+    void start(Receiver receiver) throws IOException;
+
+    /**
+     * Sends a batch to the other nodes, never to this one.
+     */
+    void send(List<Invalidation> invalidations);
+}
@@ -0,0 +1,58 @@
+package de.witcom.app.config.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Delivers batches synchronously to the other transports of the same group within this JVM, used in tests.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+
+    private static final ConcurrentMap<String, Set<LoopbackInvalidationTransport>> groups = new ConcurrentHashMap<>();
+
+    private final String group;
+
+    private volatile Receiver receiver;
+
+    public LoopbackInvalidationTransport(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        Set<LoopbackInvalidationTransport> members = groups.get(group);
+        if (members == null) {
+            Set<LoopbackInvalidationTransport> created = new CopyOnWriteArraySet<>();
+            members = groups.putIfAbsent(group, created);
+            if (members == null) {
+                members = created;
+            }
+        }
+        members.add(this);
+    }
+
+    @Override
+    public void send(List<Invalidation> invalidations) {
+        Set<LoopbackInvalidationTransport> members = groups.get(group);
+        if (members == null) {
+            return;
+        }
+        for (LoopbackInvalidationTransport member : members) {
+            if (member != this) {
+                member.receiver.receive(invalidations);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        Set<LoopbackInvalidationTransport> members = groups.get(group);
+        if (members != null) {
+            members.remove(this);
+        }
+    }
+}
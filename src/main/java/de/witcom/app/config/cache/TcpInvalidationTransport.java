@@ -0,0 +1,232 @@
+package de.witcom.app.config.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends batches over one TCP connection per peer, and listens for the batches of the peers.
+ * <p/>
+ * Batches are sent in order by a single background thread, so that committing threads never wait for the
+ * network. A peer that cannot be reached is retried on the next batch; batches it missed are lost. Only
+ * connections from the configured peers are accepted.
+ */
+public class TcpInvalidationTransport implements InvalidationTransport {
+
+    private final Logger log = LoggerFactory.getLogger(TcpInvalidationTransport.class);
+
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    private final int port;
+
+    private final List<InetSocketAddress> peers;
+
+    private final Map<InetSocketAddress, Connection> connections = new ConcurrentHashMap<>();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(threadFactory("cache-invalidation-sender"));
+
+    private final ExecutorService readers = Executors.newCachedThreadPool(threadFactory("cache-invalidation-reader"));
+
+    private volatile ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+    /**
+     * @param port  the port to listen on, 0 for any free port
+     * @param peers the other nodes, as <code>host:port</code>
+     */
+    public TcpInvalidationTransport(int port, List<String> peers) {
+        this.port = port;
+        this.peers = new ArrayList<>();
+        for (String peer : peers) {
+            int separator = peer.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid peer " + peer + ", expected host:port");
+            }
+            this.peers.add(InetSocketAddress.createUnresolved(peer.substring(0, separator).trim(),
+                Integer.parseInt(peer.substring(separator + 1).trim())));
+        }
+    }
+
+    @Override
+    public void start(final Receiver receiver) throws IOException {
+        serverSocket = new ServerSocket(port);
+        log.info("Listening for cache invalidations on port {}, peers {}", serverSocket.getLocalPort(), peers);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!closed) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        if (!isPeer(socket.getInetAddress())) {
+                            log.warn("Rejected cache invalidation connection from {}", socket.getRemoteSocketAddress());
+                            socket.close();
+                            continue;
+                        }
+                        readers.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                read(socket, receiver);
+                            }
+                        });
+                    } catch (IOException e) {
+                        if (!closed) {
+                            log.warn("Failed to accept cache invalidation connection: {}", e.getMessage());
+                        }
+                    }
+                }
+            }
+        }, "cache-invalidation-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the port listened on
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void send(final List<Invalidation> invalidations) {
+        if (closed) {
+            return;
+        }
+        sender.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (InetSocketAddress peer : peers) {
+                    send(peer, invalidations);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        sender.shutdownNow();
+        readers.shutdownNow();
+        for (Connection connection : connections.values()) {
+            connection.close();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    private void send(InetSocketAddress peer, List<Invalidation> invalidations) {
+        Connection connection = connections.get(peer);
+        try {
+            if (connection == null) {
+                connection = new Connection(peer);
+                connections.put(peer, connection);
+            }
+            Invalidation.write(connection.out, invalidations);
+            connection.out.flush();
+        } catch (IOException e) {
+            log.warn("Failed to send {} cache invalidations to {}: {}", invalidations.size(), peer, e.getMessage());
+            connections.remove(peer);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private void read(Socket socket, Receiver receiver) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (!closed) {
+                receiver.receive(Invalidation.read(in));
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("Cache invalidation connection from {} closed", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            log.warn("Dropped cache invalidation connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to apply cache invalidations from {}", socket.getRemoteSocketAddress(), e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private boolean isPeer(InetAddress address) {
+        if (address.isLoopbackAddress()) {
+            return true;
+        }
+        for (InetSocketAddress peer : peers) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(peer.getHostString())) {
+                    if (peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Unable to resolve cache invalidation peer {}", peer);
+            }
+        }
+        return false;
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+
+        private final DataOutputStream out;
+
+        Connection(InetSocketAddress peer) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(peer.getHostString(), peer.getPort()), CONNECT_TIMEOUT);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Cache specific code.
+ */
+package de.witcom.app.config.cache;
@@ -0,0 +1,107 @@
+package de.witcom.app.config.liquibase;
+
+import de.witcom.app.domain.util.JSONStringMapConverter;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Moves the data of existing audit events from T_PERSISTENT_AUDIT_EVENT_DATA into the JSON event_data
+ * column of their event. Events are migrated in ranges of {@value #BATCH_SIZE} event ids, so only the data
+ * rows of one range are read at a time, whatever the driver buffers of a result set.
+ */
+public class AuditEventDataMigration implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+
+    private int migrated;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try (PreparedStatement nextKeys = connection.prepareStatement(
+                 "select event_id from T_PERSISTENT_AUDIT_EVENT where event_id > ? order by event_id");
+             PreparedStatement select = connection.prepareStatement(
+                 "select event_id, name, value from T_PERSISTENT_AUDIT_EVENT_DATA where event_id > ? and event_id <= ? order by event_id");
+             PreparedStatement update = connection.prepareStatement(
+                 "update T_PERSISTENT_AUDIT_EVENT set event_data = ? where event_id = ?")) {
+            nextKeys.setMaxRows(BATCH_SIZE);
+            long lower = Long.MIN_VALUE;
+            while (true) {
+                // the range ends at the last of the next BATCH_SIZE events
+                long upper = lower;
+                nextKeys.setLong(1, lower);
+                try (ResultSet keys = nextKeys.executeQuery()) {
+                    while (keys.next()) {
+                        upper = keys.getLong(1);
+                    }
+                }
+                if (upper == lower) {
+                    break;
+                }
+                migrateRange(select, update, lower, upper);
+                lower = upper;
+            }
+        } catch (SQLException e) {
+            throw new CustomChangeException("Unable to migrate audit event data", e);
+        }
+    }
+
+    private void migrateRange(PreparedStatement select, PreparedStatement update, long lower, long upper) throws SQLException {
+        select.setLong(1, lower);
+        select.setLong(2, upper);
+        try (ResultSet rows = select.executeQuery()) {
+            long currentEvent = lower;
+            Map<String, String> data = new HashMap<>();
+            while (rows.next()) {
+                long eventId = rows.getLong(1);
+                if (eventId != currentEvent && !data.isEmpty()) {
+                    addUpdate(update, currentEvent, data);
+                }
+                currentEvent = eventId;
+                data.put(rows.getString(2), rows.getString(3));
+            }
+            if (!data.isEmpty()) {
+                addUpdate(update, currentEvent, data);
+            }
+        }
+        update.executeBatch();
+    }
+
+    private void addUpdate(PreparedStatement update, long eventId, Map<String, String> data) throws SQLException {
+        update.setString(1, JSONStringMapConverter.toJson(data));
+        update.setLong(2, eventId);
+        update.addBatch();
+        data.clear();
+        migrated++;
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Audit data of " + migrated + " events moved to T_PERSISTENT_AUDIT_EVENT.event_data";
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
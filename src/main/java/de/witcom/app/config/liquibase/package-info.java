@@ -0,0 +1,4 @@
+/**
+ * Liquibase custom changes.
+ */
+package de.witcom.app.config.liquibase;
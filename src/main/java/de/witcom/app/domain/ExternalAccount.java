@@ -3,6 +3,8 @@ package de.witcom.app.domain;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -10,10 +12,14 @@ import java.io.Serializable;
 /**
  * An externally managed account that is associated with an internal user.  For example, an
  * account with Google or Facebook.
+ * <p/>
+ * Provider and external id form the natural id; its resolutions are cached, see
+ * {@link de.witcom.app.repository.ExternalAccountRepositoryCustom#findOneByNaturalId(String, String)}.
  */
 @Entity
 @Table(name = "T_EXTERNAL_ACCOUNT") 
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@NaturalIdCache
 public class ExternalAccount implements Serializable {
 
     
@@ -22,10 +28,11 @@ public class ExternalAccount implements Serializable {
     @Column(name = "external_account_id")
     private Long id;
 
-    @Enumerated(EnumType.STRING)
-    @Column(name = "external_provider", length = 20, nullable = false)
-    private ExternalAccountProvider externalProvider;
+    @NaturalId
+    @Column(name = "external_provider", length = ExternalAccountProvider.MAX_NAME_LENGTH, nullable = false)
+    private String externalProvider;
 
+    @NaturalId
     @Column(name = "external_id", length = 50, nullable = false) 
     private String externalId;
 
@@ -37,16 +44,16 @@ public class ExternalAccount implements Serializable {
     }
 
     public ExternalAccount(ExternalAccountProvider externalProvider, String externalId) {
-        this.externalProvider = externalProvider;
+        this.externalProvider = externalProvider.name();
         this.externalId = externalId;
     }
 
     public ExternalAccountProvider getExternalProvider() {
-        return externalProvider;
+        return externalProvider == null ? null : ExternalAccountProvider.forStoredName(externalProvider);
     }
 
     public void setExternalProvider(ExternalAccountProvider externalProvider) {
-        this.externalProvider = externalProvider;
+        this.externalProvider = externalProvider == null ? null : externalProvider.name();
     }
 
     public String getExternalId() {
@@ -91,7 +98,10 @@ public class ExternalAccount implements Serializable {
                 return false;
         } else if (!externalId.equals(other.externalId))
             return false;
-        if (externalProvider != other.externalProvider)
+        if (externalProvider == null) {
+            if (other.externalProvider != null)
+                return false;
+        } else if (!externalProvider.equals(other.externalProvider))
             return false;
         return true;
     }
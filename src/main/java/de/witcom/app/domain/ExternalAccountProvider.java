@@ -1,12 +1,102 @@
 package de.witcom.app.domain;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Supported externa providers.  
+ * Supported external providers. Providers are registered at startup by the OIDCIssuerRegistry, one per
+ * configured OpenID Connect issuer, unknown names are rejected; registered instances are canonical.
+ * <p/>
+ * Accounts may still reference a provider whose issuer has since been removed from the configuration, see
+ * {@link #forStoredName(String)}; such providers are not registered and no login goes through them.
  */
-public enum ExternalAccountProvider {
-	DUMMYSSO;
+public final class ExternalAccountProvider implements Serializable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExternalAccountProvider.class);
+
+    /** Maximum length of a provider name, see the external_provider column. */
+    public static final int MAX_NAME_LENGTH = 20;
+
+    private static final ConcurrentMap<String, ExternalAccountProvider> PROVIDERS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, ExternalAccountProvider> UNREGISTERED = new ConcurrentHashMap<>();
+
+    public static final ExternalAccountProvider DUMMYSSO = register("DUMMYSSO");
+
+    private final String name;
+
+    private ExternalAccountProvider(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registers the provider with the given name, only called for the configured issuers.
+     */
+    public static ExternalAccountProvider register(String name) {
+        if (StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("Provider name must not be blank");
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Provider name " + name + " is longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        ExternalAccountProvider provider = PROVIDERS.get(name);
+        if (provider == null) {
+            ExternalAccountProvider existing = PROVIDERS.putIfAbsent(name, provider = new ExternalAccountProvider(name));
+            if (existing != null) {
+                provider = existing;
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Returns the registered provider with the given name.
+     *
+     * @throws IllegalArgumentException if no such provider is registered
+     */
+    @JsonCreator
+    public static ExternalAccountProvider valueOf(String name) {
+        ExternalAccountProvider provider = name == null ? null : PROVIDERS.get(name);
+        if (provider == null) {
+            throw new IllegalArgumentException("No external provider " + name);
+        }
+        return provider;
+    }
+
+    /**
+     * Returns the provider of a stored account: the registered provider with the given name, or an unregistered
+     * one if its issuer is no longer configured, so that the account can still be read and serialised.
+     */
+    public static ExternalAccountProvider forStoredName(String name) {
+        ExternalAccountProvider provider = PROVIDERS.get(name);
+        if (provider != null) {
+            return provider;
+        }
+        provider = UNREGISTERED.get(name);
+        if (provider == null) {
+            ExternalAccountProvider existing = UNREGISTERED.putIfAbsent(name, provider = new ExternalAccountProvider(name));
+            if (existing != null) {
+                provider = existing;
+            } else {
+                log.warn("External accounts reference the provider {}, which is not registered", name);
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * @return true if the provider belongs to a configured issuer
+     */
+    public boolean isRegistered() {
+        return PROVIDERS.get(name) == this;
+    }
 
     public static ExternalAccountProvider caseInsensitiveValueOf(String value) {
         if (StringUtils.isNotBlank(value))
@@ -14,4 +104,28 @@ public enum ExternalAccountProvider {
         else
             return null;
     }
+
+    @JsonValue
+    public String name() {
+        return name;
+    }
+
+    private Object readResolve() {
+        return forStoredName(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ExternalAccountProvider && name.equals(((ExternalAccountProvider) o).name));
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
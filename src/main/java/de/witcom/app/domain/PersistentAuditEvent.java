@@ -1,5 +1,6 @@
 package de.witcom.app.domain;
 
+import de.witcom.app.domain.util.JSONStringMapConverter;
 import org.hibernate.annotations.Type;
 import org.joda.time.LocalDateTime;
 import javax.persistence.*;
@@ -15,6 +16,11 @@ import java.util.Map;
 @Table(name = "T_PERSISTENT_AUDIT_EVENT")
 public class PersistentAuditEvent  {
 
+    /**
+     * Bucket of events without a date. They have no age, so retention leaves this bucket alone.
+     */
+    public static final int UNDATED_BUCKET = 0;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     @Column(name = "event_id")
@@ -27,13 +33,17 @@ public class PersistentAuditEvent  {
     @Column(name = "event_date")
     @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentLocalDateTime")
     private LocalDateTime auditEventDate;
+
+    // month of the event date, as yyyyMM, retention drops whole buckets
+    @Column(name = "event_bucket", nullable = false)
+    private Integer auditEventBucket = UNDATED_BUCKET;
+
     @Column(name = "event_type")
     private String auditEventType;
 
-    @ElementCollection
-    @MapKeyColumn(name="name")
-    @Column(name="value")
-    @CollectionTable(name="T_PERSISTENT_AUDIT_EVENT_DATA", joinColumns=@JoinColumn(name="event_id"))
+    // stored as a JSON object on the event row, see AuditEventReader
+    @Convert(converter = JSONStringMapConverter.class)
+    @Column(name = "event_data")
     private Map<String, String> data = new HashMap<>();
 
     public Long getId() {
@@ -58,6 +68,11 @@ public class PersistentAuditEvent  {
 
     public void setAuditEventDate(LocalDateTime auditEventDate) {
         this.auditEventDate = auditEventDate;
+        this.auditEventBucket = auditEventDate == null ? UNDATED_BUCKET : bucketOf(auditEventDate);
+    }
+
+    public Integer getAuditEventBucket() {
+        return auditEventBucket;
     }
 
     public String getAuditEventType() {
@@ -75,4 +90,11 @@ public class PersistentAuditEvent  {
     public void setData(Map<String, String> data) {
         this.data = data;
     }
+
+    /**
+     * @return the bucket of the events of that date, its month as yyyyMM
+     */
+    public static int bucketOf(LocalDateTime date) {
+        return date.getYear() * 100 + date.getMonthOfYear();
+    }
 }
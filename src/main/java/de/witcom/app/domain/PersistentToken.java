@@ -36,6 +36,16 @@ public class PersistentToken implements Serializable {
     @Column(name = "token_value", nullable = false)
     private String tokenValue;
 
+    // valid for a grace period after the rotation
+    @JsonIgnore
+    @Column(name = "previous_token_value")
+    private String previousTokenValue;
+
+    // time of the last rotation, in epoch milliseconds
+    @JsonIgnore
+    @Column(name = "rotated_at")
+    private Long rotatedAt;
+
     @JsonIgnore
     @Column(name = "token_date")
     @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentLocalDate")
@@ -69,6 +79,22 @@ public class PersistentToken implements Serializable {
         this.tokenValue = tokenValue;
     }
 
+    public String getPreviousTokenValue() {
+        return previousTokenValue;
+    }
+
+    public void setPreviousTokenValue(String previousTokenValue) {
+        this.previousTokenValue = previousTokenValue;
+    }
+
+    public Long getRotatedAt() {
+        return rotatedAt;
+    }
+
+    public void setRotatedAt(Long rotatedAt) {
+        this.rotatedAt = rotatedAt;
+    }
+
     public LocalDate getTokenDate() {
         return tokenDate;
     }
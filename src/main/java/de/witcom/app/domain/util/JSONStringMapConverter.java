@@ -0,0 +1,57 @@
+package de.witcom.app.domain.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a map of strings as a JSON object in a single column.
+ */
+@Converter
+public class JSONStringMapConverter implements AttributeConverter<Map<String, String>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final TypeReference<HashMap<String, String>> MAP_TYPE = new TypeReference<HashMap<String, String>>() {
+    };
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, String> attribute) {
+        return toJson(attribute);
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(String dbData) {
+        return fromJson(dbData);
+    }
+
+    public static String toJson(Map<String, String> map) {
+        if (map == null || map.isEmpty()) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsString(map);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + map, e);
+        }
+    }
+
+    /**
+     * @return the map, empty if the column is null
+     */
+    public static Map<String, String> fromJson(String json) {
+        if (json == null || json.isEmpty()) {
+            return new HashMap<>();
+        }
+        try {
+            return MAPPER.readValue(json, MAP_TYPE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to parse " + json, e);
+        }
+    }
+}
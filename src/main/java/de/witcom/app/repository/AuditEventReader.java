@@ -0,0 +1,231 @@
+package de.witcom.app.repository;
+
+import de.witcom.app.domain.util.JSONStringMapConverter;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads audit events straight into Spring Boot's AuditEvent, with one query per request: the event data
+ * is read from the JSON event_data column of the event row.
+ * <p/>
+ * Events are returned most recent first. List queries return at most <code>jhipster.audit.maxResults</code>
+ * events; larger result sets are read page by page with {@link #findPage}, which seeks to the cursor of the
+ * previous page on the (event_date, event_id) index instead of skipping rows, so every page costs the same.
+ */
+@Repository
+public class AuditEventReader {
+
+    public static final int DEFAULT_MAX_RESULTS = 1000;
+
+    private static final String SELECT_SQL =
+        "select event_id, principal, event_date, event_type, event_data from T_PERSISTENT_AUDIT_EVENT";
+
+    private static final String ORDER_SQL = " order by event_date desc, event_id desc";
+
+    private static final RowMapper<AuditEvent> AUDIT_EVENT_MAPPER = new RowMapper<AuditEvent>() {
+        @Override
+        public AuditEvent mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Map<String, Object> data = new HashMap<String, Object>(JSONStringMapConverter.fromJson(rs.getString("event_data")));
+            return new AuditEvent(new Date(rs.getTimestamp("event_date").getTime()), rs.getString("principal"),
+                rs.getString("event_type"), data);
+        }
+    };
+
+    /**
+     * Position of an event in the (event_date desc, event_id desc) order.
+     */
+    public static final class Cursor {
+
+        private final long date;
+
+        private final long id;
+
+        public Cursor(long date, long id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the value is not a cursor
+         */
+        public static Cursor parse(String value) {
+            int separator = value.indexOf('_');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor " + value);
+            }
+            try {
+                return new Cursor(Long.parseLong(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor " + value, e);
+            }
+        }
+
+        public long getDate() {
+            return date;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return date + "_" + id;
+        }
+    }
+
+    public static final class Page {
+
+        private final List<AuditEvent> events;
+
+        private final Cursor next;
+
+        Page(List<AuditEvent> events, Cursor next) {
+            this.events = events;
+            this.next = next;
+        }
+
+        public List<AuditEvent> getEvents() {
+            return events;
+        }
+
+        /**
+         * @return the cursor of the next page, null if this is the last page
+         */
+        public Cursor getNext() {
+            return next;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int maxResults;
+
+    @Inject
+    public AuditEventReader(Environment env, DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.maxResults = env.getProperty("jhipster.audit.maxResults", Integer.class, DEFAULT_MAX_RESULTS);
+    }
+
+    public List<AuditEvent> findAll() {
+        return query(SELECT_SQL + ORDER_SQL, new ArrayList<>(), maxResults, new ListExtractor());
+    }
+
+    public List<AuditEvent> findByPrincipal(String principal) {
+        List<Object> args = new ArrayList<>();
+        args.add(principal);
+        return query(SELECT_SQL + " where principal = ?" + ORDER_SQL, args, maxResults, new ListExtractor());
+    }
+
+    public List<AuditEvent> findByPrincipalAndDateAfter(String principal, Date after) {
+        List<Object> args = new ArrayList<>();
+        args.add(principal);
+        args.add(new Timestamp(after.getTime()));
+        return query(SELECT_SQL + " where principal = ? and event_date > ?" + ORDER_SQL, args, maxResults,
+            new ListExtractor());
+    }
+
+    public List<AuditEvent> findByDatesBetween(Date fromDate, Date toDate) {
+        List<Object> args = new ArrayList<>();
+        args.add(new Timestamp(fromDate.getTime()));
+        args.add(new Timestamp(toDate.getTime()));
+        return query(SELECT_SQL + " where event_date between ? and ?" + ORDER_SQL, args, maxResults,
+            new ListExtractor());
+    }
+
+    /**
+     * @param principal optional
+     * @param fromDate  optional
+     * @param toDate    optional
+     * @param after     cursor of the page to read, null for the first page
+     * @param size      maximum number of events of the page
+     */
+    public Page findPage(String principal, Date fromDate, Date toDate, Cursor after, final int size) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL).append(" where 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (principal != null) {
+            sql.append(" and principal = ?");
+            args.add(principal);
+        }
+        if (fromDate != null) {
+            sql.append(" and event_date >= ?");
+            args.add(new Timestamp(fromDate.getTime()));
+        }
+        if (toDate != null) {
+            sql.append(" and event_date <= ?");
+            args.add(new Timestamp(toDate.getTime()));
+        }
+        if (after != null) {
+            Timestamp date = new Timestamp(after.getDate());
+            sql.append(" and (event_date < ? or (event_date = ? and event_id < ?))");
+            args.add(date);
+            args.add(date);
+            args.add(after.getId());
+        }
+        sql.append(ORDER_SQL);
+        // one more row tells whether there is a next page
+        return query(sql.toString(), args, size + 1, new ResultSetExtractor<Page>() {
+            @Override
+            public Page extractData(ResultSet rs) throws SQLException, DataAccessException {
+                List<AuditEvent> events = new ArrayList<>(size);
+                Cursor last = null;
+                while (rs.next()) {
+                    if (events.size() == size) {
+                        return new Page(events, last);
+                    }
+                    events.add(AUDIT_EVENT_MAPPER.mapRow(rs, events.size()));
+                    last = new Cursor(rs.getTimestamp("event_date").getTime(), rs.getLong("event_id"));
+                }
+                return new Page(events, null);
+            }
+        });
+    }
+
+    /**
+     * Runs the query with a row limit set on the statement, so that drivers reading the whole result set
+     * up front (MySQL) do not fetch more rows than needed.
+     */
+    private <T> T query(final String sql, final List<Object> args, final int maxRows, ResultSetExtractor<T> extractor) {
+        return jdbcTemplate.query(new PreparedStatementCreator() {
+            @Override
+            public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setMaxRows(maxRows);
+                new ArgumentPreparedStatementSetter(args.toArray()).setValues(statement);
+                return statement;
+            }
+        }, extractor);
+    }
+
+    private static class ListExtractor implements ResultSetExtractor<List<AuditEvent>> {
+
+        @Override
+        public List<AuditEvent> extractData(ResultSet rs) throws SQLException, DataAccessException {
+            List<AuditEvent> events = new ArrayList<>();
+            while (rs.next()) {
+                events.add(AUDIT_EVENT_MAPPER.mapRow(rs, events.size()));
+            }
+            return events;
+        }
+    }
+}
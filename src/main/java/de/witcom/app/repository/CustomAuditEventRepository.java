@@ -1,14 +1,14 @@
 package de.witcom.app.repository;
 
 import de.witcom.app.config.audit.AuditEventConverter;
+import de.witcom.app.config.audit.AuditEventStatistics;
+import de.witcom.app.config.audit.AuditEventWriter;
 import de.witcom.app.domain.PersistentAuditEvent;
 import org.joda.time.LocalDateTime;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.actuate.audit.AuditEventRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.inject.Inject;
 import java.util.Date;
@@ -21,7 +21,13 @@ import java.util.List;
 public class CustomAuditEventRepository {
 
     @Inject
-    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+    private AuditEventReader auditEventReader;
+
+    @Inject
+    private AuditEventWriter auditEventWriter;
+
+    @Inject
+    private AuditEventStatistics auditEventStatistics;
 
     @Bean
     public AuditEventRepository auditEventRepository() {
@@ -32,28 +38,27 @@ public class CustomAuditEventRepository {
 
             @Override
             public List<AuditEvent> find(String principal, Date after) {
-                Iterable<PersistentAuditEvent> persistentAuditEvents;
                 if (principal == null && after == null) {
-                    persistentAuditEvents = persistenceAuditEventRepository.findAll();
+                    return auditEventReader.findAll();
                 } else if (after == null) {
-                    persistentAuditEvents = persistenceAuditEventRepository.findByPrincipal(principal);
+                    return auditEventReader.findByPrincipal(principal);
                 } else {
-                    persistentAuditEvents =
-                            persistenceAuditEventRepository.findByPrincipalAndAuditEventDateAfter(principal, new LocalDateTime(after));
+                    return auditEventReader.findByPrincipalAndDateAfter(principal, after);
                 }
-                return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
             }
 
             @Override
-            @Transactional(propagation = Propagation.REQUIRES_NEW)
             public void add(AuditEvent event) {
+                auditEventStatistics.record(event);
+
                 PersistentAuditEvent persistentAuditEvent = new PersistentAuditEvent();
                 persistentAuditEvent.setPrincipal(event.getPrincipal());
                 persistentAuditEvent.setAuditEventType(event.getType());
                 persistentAuditEvent.setAuditEventDate(new LocalDateTime(event.getTimestamp()));
                 persistentAuditEvent.setData(auditEventConverter.convertDataToStrings(event.getData()));
 
-                persistenceAuditEventRepository.save(persistentAuditEvent);
+                // written in the background, see AuditEventWriter
+                auditEventWriter.add(persistentAuditEvent);
             }
         };
     }
@@ -0,0 +1,11 @@
+package de.witcom.app.repository;
+
+import de.witcom.app.domain.ExternalAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Spring Data JPA repository for the ExternalAccount entity.
+ */
+public interface ExternalAccountRepository extends JpaRepository<ExternalAccount, Long>, ExternalAccountRepositoryCustom {
+
+}
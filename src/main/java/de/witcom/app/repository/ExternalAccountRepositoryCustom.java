@@ -0,0 +1,25 @@
+package de.witcom.app.repository;
+
+import de.witcom.app.domain.ExternalAccount;
+
+/**
+ * Lookups of external accounts that Spring Data cannot derive.
+ */
+public interface ExternalAccountRepositoryCustom {
+
+    /**
+     * Loads an account by its natural id. Served from the second level cache (natural id, account and
+     * user regions) once the account has been seen, so it usually issues no SQL.
+     *
+     * @return the account, or null if there is none
+     */
+    ExternalAccount findOneByNaturalId(String provider, String externalId);
+
+    /**
+     * Same as {@link #findOneByNaturalId(String, String)}, but only if both the natural id resolution and the
+     * account are in the second level cache. Loading its user and authorities then takes at most two queries.
+     *
+     * @return the account, or null if there is none or it is not cached
+     */
+    ExternalAccount findOneCachedByNaturalId(String provider, String externalId);
+}
@@ -0,0 +1,53 @@
+package de.witcom.app.repository;
+
+import de.witcom.app.domain.ExternalAccount;
+import org.hibernate.Session;
+import org.hibernate.cache.spi.NaturalIdCacheKey;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.Serializable;
+
+/**
+ * Hibernate implementation of {@link ExternalAccountRepositoryCustom}.
+ */
+public class ExternalAccountRepositoryImpl implements ExternalAccountRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public ExternalAccount findOneByNaturalId(String provider, String externalId) {
+        return entityManager.unwrap(Session.class)
+            .byNaturalId(ExternalAccount.class)
+            .using("externalProvider", provider)
+            .using("externalId", externalId)
+            .load();
+    }
+
+    @Override
+    public ExternalAccount findOneCachedByNaturalId(String provider, String externalId) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getEntityPersister(ExternalAccount.class.getName());
+        NaturalIdRegionAccessStrategy naturalIdCache = persister.getNaturalIdCacheAccessStrategy();
+        if (naturalIdCache == null) {
+            return null;
+        }
+        // the values in the order of the natural id properties
+        int[] naturalIdProperties = persister.getNaturalIdentifierProperties();
+        Object[] naturalId = new Object[naturalIdProperties.length];
+        for (int i = 0; i < naturalIdProperties.length; i++) {
+            naturalId[i] = "externalProvider".equals(persister.getPropertyNames()[naturalIdProperties[i]]) ?
+                provider : externalId;
+        }
+        Serializable id = (Serializable) naturalIdCache.get(
+            new NaturalIdCacheKey(naturalId, persister, session), session.getTimestamp());
+        if (id == null || !session.getFactory().getCache().containsEntity(ExternalAccount.class, id)) {
+            return null;
+        }
+        return entityManager.find(ExternalAccount.class, id);
+    }
+}
@@ -0,0 +1,83 @@
+package de.witcom.app.repository;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyset pagination for any entity: pages are ordered by a unique key property and start after the key of
+ * the last row of the previous page, so the database seeks on the key index instead of skipping rows and
+ * deep pages cost the same as the first one. Counting is left to the caller, as it is not needed to page.
+ */
+@Repository
+public class KeysetPager {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * @param specification optional restriction
+     * @param key           unique property the entities are ordered by
+     * @param after         key of the last entity of the previous page, null for the first page
+     */
+    public <T, K extends Comparable<? super K>> List<T> findPage(Class<T> entityClass, Specification<T> specification,
+                                                                String key, K after, Sort.Direction direction, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        query.select(root);
+        return execute(query, root, specification, key, after, direction, size);
+    }
+
+    /**
+     * Same as {@link #findPage(Class, Specification, String, Comparable, Sort.Direction, int)}, selecting only
+     * the given properties, passed to a constructor of the projection.
+     */
+    public <T, R, K extends Comparable<? super K>> List<R> findPage(Class<T> entityClass, Class<R> projection,
+                                                                   List<String> properties, Specification<T> specification,
+                                                                   String key, K after, Sort.Direction direction, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = cb.createQuery(projection);
+        Root<T> root = query.from(entityClass);
+        List<Selection<?>> selections = new ArrayList<>(properties.size());
+        for (String property : properties) {
+            selections.add(root.get(property));
+        }
+        query.select(cb.construct(projection, selections.toArray(new Selection<?>[selections.size()])));
+        return execute(query, root, specification, key, after, direction, size);
+    }
+
+    private <T, R, K extends Comparable<? super K>> List<R> execute(CriteriaQuery<R> query, Root<T> root,
+                                                                   Specification<T> specification, String key, K after,
+                                                                   Sort.Direction direction, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        List<Predicate> predicates = new ArrayList<>();
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        Path<K> keyPath = root.get(key);
+        if (after != null) {
+            predicates.add(direction == Sort.Direction.DESC ? cb.lessThan(keyPath, after) : cb.greaterThan(keyPath, after));
+        }
+        query.where(predicates.toArray(new Predicate[predicates.size()]));
+        query.orderBy(direction == Sort.Direction.DESC ? cb.desc(keyPath) : cb.asc(keyPath));
+        TypedQuery<R> typedQuery = entityManager.createQuery(query);
+        typedQuery.setMaxResults(size);
+        return typedQuery.getResultList();
+    }
+}
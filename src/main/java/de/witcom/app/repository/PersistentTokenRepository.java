@@ -4,6 +4,7 @@ import de.witcom.app.domain.PersistentToken;
 import de.witcom.app.domain.User;
 import org.joda.time.LocalDate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
@@ -16,4 +17,11 @@ public interface PersistentTokenRepository extends JpaRepository<PersistentToken
 
     List<PersistentToken> findByTokenDateBefore(LocalDate localDate);
 
+    /**
+     * Reads the token from the database, where {@link #findOne(java.io.Serializable)} may return a value from
+     * the second level cache that another node has already rotated.
+     */
+    @Query("select t from PersistentToken t where t.series = ?1")
+    PersistentToken findOneFromDatabase(String series);
+
 }
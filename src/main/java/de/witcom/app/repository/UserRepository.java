@@ -1,9 +1,11 @@
 package de.witcom.app.repository;
 
-import de.witcom.app.domain.ExternalAccountProvider; 
 import de.witcom.app.domain.User;
 
+import de.witcom.app.web.rest.dto.UserDTO;
 import org.joda.time.DateTime;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -14,6 +16,11 @@ import java.util.List;
  */
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    /**
+     * Counts of {@link #countByFilter(String)}, they expire after a minute.
+     */
+    String COUNT_CACHE = "de.witcom.app.domain.User.count";
+
     User findOneByActivationKey(String activationKey);
 
     List<User> findAllByActivatedIsFalseAndCreatedDateBefore(DateTime dateTime);
@@ -21,10 +28,23 @@ public interface UserRepository extends JpaRepository<User, Long> {
     User findOneByLogin(String login);
 
     User findOneByEmail(String email);
-    
-    
-    @Query("select u from User u inner join u.externalAccounts ea where ea.externalProvider = ?1 and ea.externalId = ?2")
-    User getUserByExternalAccount(ExternalAccountProvider provider, String externalAccountId);
-    
 
+    /**
+     * The user of an external account, with the authorities fetched in the same query.
+     */
+    @Query("select distinct u from User u left join fetch u.authorities inner join u.externalAccounts ea " +
+        "where ea.externalProvider = ?1 and ea.externalId = ?2")
+    User findOneWithAuthoritiesByExternalAccount(String provider, String externalAccountId);
+
+    /**
+     * Users whose login or email matches the lowercased <code>like</code> pattern, only with the columns of
+     * the list, sorted and limited by the pageable.
+     */
+    @Query("select new de.witcom.app.web.rest.dto.UserDTO(u.login, u.firstName, u.lastName, u.email, u.langKey) " +
+        "from User u where lower(u.login) like ?1 or lower(u.email) like ?1")
+    List<UserDTO> findAllAsDTOByFilter(String filter, Pageable pageable);
+
+    @Cacheable(COUNT_CACHE)
+    @Query("select count(u) from User u where lower(u.login) like ?1 or lower(u.email) like ?1")
+    long countByFilter(String filter);
 }
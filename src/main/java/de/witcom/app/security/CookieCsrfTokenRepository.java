@@ -0,0 +1,53 @@
+package de.witcom.app.security;
+
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.UUID;
+
+/**
+ * Keeps the CSRF token in the cookie AngularJS reads and sends back in a header, instead of the HTTP session,
+ * so that requests of anonymous users, such as the OpenID Connect login, do not create a session.
+ * <p/>
+ * The token is not http-only: it is safe to read by the scripts of this site, which is how it proves a
+ * request comes from them, and out of reach of other sites.
+ */
+public class CookieCsrfTokenRepository implements CsrfTokenRepository {
+
+    public static final String COOKIE_NAME = "CSRF-TOKEN";
+
+    public static final String HEADER_NAME = "X-CSRF-TOKEN";
+
+    public static final String PARAMETER_NAME = "_csrf";
+
+    @Override
+    public CsrfToken generateToken(HttpServletRequest request) {
+        return new DefaultCsrfToken(HEADER_NAME, PARAMETER_NAME, UUID.randomUUID().toString());
+    }
+
+    @Override
+    public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+        Cookie cookie = new Cookie(COOKIE_NAME, token != null ? token.getToken() : "");
+        // removed on logout
+        cookie.setMaxAge(token != null ? -1 : 0);
+        cookie.setHttpOnly(false);
+        cookie.setSecure(request.isSecure());
+        cookie.setPath("/");
+        response.addCookie(cookie);
+    }
+
+    @Override
+    public CsrfToken loadToken(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        if (cookie == null || !StringUtils.hasText(cookie.getValue())) {
+            return null;
+        }
+        return new DefaultCsrfToken(HEADER_NAME, PARAMETER_NAME, cookie.getValue());
+    }
+}
@@ -72,6 +72,9 @@ public class CustomPersistentRememberMeServices extends
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private PersistentTokenRefresher tokenRefresher;
+
     @Inject
     public CustomPersistentRememberMeServices(Environment env, org.springframework.security.core.userdetails.UserDetailsService userDetailsService) {
         super(env.getProperty("jhipster.security.rememberme.key"), userDetailsService);
@@ -86,18 +89,10 @@ public class CustomPersistentRememberMeServices extends
         String login = token.getUser().getLogin();
 
         // Token also matches, so login is valid. Update the token value, keeping the *same* series number.
+        // The refresher rotates it at most once per window and writes it in the background.
         log.debug("Refreshing persistent login token for user '{}', series '{}'", login, token.getSeries());
-        token.setTokenDate(new LocalDate());
-        token.setTokenValue(generateTokenData());
-        token.setIpAddress(request.getRemoteAddr());
-        token.setUserAgent(request.getHeader("User-Agent"));
-        try {
-            persistentTokenRepository.saveAndFlush(token);
-            addCookie(token, request, response);
-        } catch (DataAccessException e) {
-            log.error("Failed to update token: ", e);
-            throw new RememberMeAuthenticationException("Autologin failed due to data access problem", e);
-        }
+        String tokenValue = tokenRefresher.refresh(token, request.getRemoteAddr(), request.getHeader("User-Agent"));
+        setCookie(new String[]{token.getSeries(), tokenValue}, TOKEN_VALIDITY_SECONDS, request, response);
         return getUserDetailsService().loadUserByUsername(login);
     }
 
@@ -138,6 +133,7 @@ public class CustomPersistentRememberMeServices extends
                 String[] cookieTokens = decodeCookie(rememberMeCookie);
                 PersistentToken token = getPersistentToken(cookieTokens);
                 persistentTokenRepository.delete(token);
+                tokenRefresher.forget(token.getSeries());
             } catch (InvalidCookieException ice) {
                 log.info("Invalid cookie, no persistent token could be deleted");
             } catch (RememberMeAuthenticationException rmae) {
@@ -157,7 +153,8 @@ public class CustomPersistentRememberMeServices extends
         }
         String presentedSeries = cookieTokens[0];
         String presentedToken = cookieTokens[1];
-        PersistentToken token = persistentTokenRepository.findOne(presentedSeries);
+        // rotations are written to the database by the node that made them, the cache may not know them yet
+        PersistentToken token = persistentTokenRepository.findOneFromDatabase(presentedSeries);
 
         if (token == null) {
             // No series match, so we can't authenticate using this cookie
@@ -166,14 +163,16 @@ public class CustomPersistentRememberMeServices extends
 
         // We have a match for this user/series combination
         log.info("presentedToken={} / tokenValue={}", presentedToken, token.getTokenValue());
-        if (!presentedToken.equals(token.getTokenValue())) {
+        if (!tokenRefresher.accepts(token, presentedToken)) {
             // Token doesn't match series value. Delete this session and throw an exception.
             persistentTokenRepository.delete(token);
+            tokenRefresher.forget(presentedSeries);
             throw new CookieTheftException("Invalid remember-me token (Series/token) mismatch. Implies previous cookie theft attack.");
         }
 
         if (token.getTokenDate().plusDays(TOKEN_VALIDITY_DAYS).isBefore(LocalDate.now())) {
             persistentTokenRepository.delete(token);
+            tokenRefresher.forget(presentedSeries);
             throw new RememberMeAuthenticationException("Remember-me login has expired");
         }
         return token;
@@ -0,0 +1,223 @@
+package de.witcom.app.security;
+
+import de.witcom.app.config.cache.ClusterCacheInvalidator;
+import de.witcom.app.config.cache.Invalidation;
+import de.witcom.app.domain.PersistentToken;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.web.authentication.rememberme.RememberMeAuthenticationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.sql.DataSource;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotates remember-me tokens and records their use.
+ * <p/>
+ * A series is rotated at most once per rotation window, and the previous value stays valid during a grace
+ * period. A rotation is written to the database, in its own transaction, before the new value is sent back:
+ * it only succeeds if the value has not changed in between, so requests racing on the same series (a browser
+ * restoring many tabs), on this node or on another, all get the value of the rotation that won. The tokens
+ * must therefore be checked as read from the database, not from the second level cache.
+ * <p/>
+ * Token dates, IP addresses and user agents are coalesced per series and written in periodic JDBC batches.
+ */
+@Component
+public class PersistentTokenRefresher {
+
+    private final Logger log = LoggerFactory.getLogger(PersistentTokenRefresher.class);
+
+    private static final String ROTATE_SQL = "update T_PERSISTENT_TOKEN set token_value = ?, previous_token_value = ?, " +
+        "rotated_at = ? where series = ? and token_value = ?";
+
+    private static final String CURRENT_SQL = "select token_value from T_PERSISTENT_TOKEN where series = ?";
+
+    private static final String USAGE_SQL = "update T_PERSISTENT_TOKEN set token_date = ?, ip_address = ?, " +
+        "user_agent = ? where series = ?";
+
+    private static final int DEFAULT_TOKEN_LENGTH = 16;
+
+    private static final int MAX_USER_AGENT_LEN = 255;
+
+    private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final long rotationWindow;
+
+    private final long gracePeriod;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate rotationTemplate;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired(required = false)
+    private ClusterCacheInvalidator invalidator;
+
+    @Inject
+    public PersistentTokenRefresher(Environment env, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.rotationWindow = TimeUnit.SECONDS.toMillis(
+            env.getProperty("jhipster.security.rememberme.rotationWindow", Long.class, 60L));
+        this.gracePeriod = TimeUnit.SECONDS.toMillis(
+            env.getProperty("jhipster.security.rememberme.gracePeriod", Long.class, 30L));
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.rotationTemplate = new TransactionTemplate(transactionManager);
+        this.rotationTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * @param token the token as read from the database
+     * @return true if the presented value is the current value of the series, or the previous one within
+     * the grace period
+     */
+    public boolean accepts(PersistentToken token, String presentedValue) {
+        if (presentedValue.equals(token.getTokenValue())) {
+            return true;
+        }
+        return presentedValue.equals(token.getPreviousTokenValue()) && token.getRotatedAt() != null
+            && System.currentTimeMillis() - token.getRotatedAt() <= gracePeriod;
+    }
+
+    /**
+     * Records a use of the series, rotating its value if the rotation window has passed.
+     *
+     * @param token the token as read from the database
+     * @return the value to send back to the browser
+     */
+    public String refresh(PersistentToken token, String ipAddress, String userAgent) {
+        long now = System.currentTimeMillis();
+        String tokenValue = token.getTokenValue();
+        if (token.getRotatedAt() == null || now - token.getRotatedAt() >= rotationWindow) {
+            tokenValue = rotate(token.getSeries(), tokenValue, now);
+        }
+        usages.put(token.getSeries(), new Usage(new LocalDate(), ipAddress,
+            userAgent != null && userAgent.length() >= MAX_USER_AGENT_LEN ?
+                userAgent.substring(0, MAX_USER_AGENT_LEN - 1) : userAgent));
+        return tokenValue;
+    }
+
+    /**
+     * Drops the pending use of a series, for example because it has been deleted.
+     */
+    public void forget(String series) {
+        usages.remove(series);
+    }
+
+    /**
+     * Writes the pending uses in one JDBC batch.
+     */
+    @Scheduled(fixedDelayString = "${jhipster.security.rememberme.flushInterval:5000}")
+    @PreDestroy
+    public void flush() {
+        Map<String, Usage> flushed = new HashMap<>();
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+            Usage usage = entry.getValue();
+            if (usages.remove(entry.getKey(), usage)) {
+                flushed.put(entry.getKey(), usage);
+                batch.add(new Object[]{new Date(usage.tokenDate.toDate().getTime()), usage.ipAddress,
+                    usage.userAgent, entry.getKey()});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(USAGE_SQL, batch);
+            log.debug("Flushed {} persistent login token updates", batch.size());
+        } catch (DataAccessException e) {
+            log.error("Failed to update persistent tokens, retrying with the next flush: ", e);
+            for (Map.Entry<String, Usage> entry : flushed.entrySet()) {
+                usages.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        for (String series : flushed.keySet()) {
+            evict(series);
+        }
+    }
+
+    /**
+     * Replaces the value of the series, unless it has already been replaced.
+     *
+     * @return the new value of the series
+     */
+    private String rotate(final String series, final String currentValue, final long now) {
+        final String rotatedValue = generateTokenData();
+        String tokenValue = rotationTemplate.execute(new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(TransactionStatus status) {
+                if (jdbcTemplate.update(ROTATE_SQL, rotatedValue, currentValue, now, series, currentValue) == 1) {
+                    log.debug("Rotated persistent login token, series '{}'", series);
+                    return rotatedValue;
+                }
+                // rotated by a concurrent request, here or on another node
+                List<String> values = jdbcTemplate.queryForList(CURRENT_SQL, String.class, series);
+                return values.isEmpty() ? null : values.get(0);
+            }
+        });
+        if (tokenValue == null) {
+            throw new RememberMeAuthenticationException("Persistent token deleted, series id: " + series);
+        }
+        evict(series);
+        return tokenValue;
+    }
+
+    /**
+     * The row has been changed behind Hibernate's back.
+     */
+    private void evict(String series) {
+        entityManagerFactory.getCache().evict(PersistentToken.class, series);
+        if (invalidator != null) {
+            invalidator.invalidate(new Invalidation(Invalidation.Type.ENTITY, PersistentToken.class.getName(), series));
+        }
+    }
+
+    private String generateTokenData() {
+        byte[] newToken = new byte[DEFAULT_TOKEN_LENGTH];
+        random.nextBytes(newToken);
+        return new String(Base64.encode(newToken));
+    }
+
+    private static class Usage {
+
+        private final LocalDate tokenDate;
+
+        private final String ipAddress;
+
+        private final String userAgent;
+
+        Usage(LocalDate tokenDate, String ipAddress, String userAgent) {
+            this.tokenDate = tokenDate;
+            this.ipAddress = ipAddress;
+            this.userAgent = userAgent;
+        }
+    }
+}
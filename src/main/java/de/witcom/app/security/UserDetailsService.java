@@ -1,23 +1,34 @@
 package de.witcom.app.security;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import de.witcom.app.domain.Authority;
 import de.witcom.app.domain.User;
 import de.witcom.app.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 /**
  * Authenticate a user from the database.
+ * <p/>
+ * Loaded users are kept in the {@link UserCache} by lowercase login, with their authorities already
+ * resolved; {@link de.witcom.app.service.UserService} evicts them when their credentials change.
  */
 @Component("userDetailsService")
 public class UserDetailsService implements org.springframework.security.core.userdetails.UserDetailsService {
@@ -27,11 +38,47 @@ public class UserDetailsService implements org.springframework.security.core.use
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private UserCache userCache;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    private final Meter cacheHits = new Meter();
+
+    private final Meter cacheMisses = new Meter();
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (metricRegistry == null) {
+            return;
+        }
+        metricRegistry.remove(name(UserDetailsService.class, "cache", "hits"));
+        metricRegistry.remove(name(UserDetailsService.class, "cache", "misses"));
+        metricRegistry.remove(name(UserDetailsService.class, "cache", "hit-ratio"));
+        metricRegistry.register(name(UserDetailsService.class, "cache", "hits"), cacheHits);
+        metricRegistry.register(name(UserDetailsService.class, "cache", "misses"), cacheMisses);
+        metricRegistry.register(name(UserDetailsService.class, "cache", "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(cacheHits.getFifteenMinuteRate(),
+                    cacheHits.getFifteenMinuteRate() + cacheMisses.getFifteenMinuteRate());
+            }
+        });
+    }
+
     @Override
     @Transactional
     public UserDetails loadUserByUsername(final String login) {
         log.debug("Authenticating {}", login);
         String lowercaseLogin = login.toLowerCase();
+        UserDetails cached = userCache.getUserFromCache(lowercaseLogin);
+        if (cached != null) {
+            cacheHits.mark();
+            return copyOf(cached);
+        }
+        cacheMisses.mark();
+
         User userFromDatabase = userRepository.findOneByLogin(lowercaseLogin);
         if (userFromDatabase == null) {
             throw new UsernameNotFoundException("User " + lowercaseLogin + " was not found in the database");
@@ -44,7 +91,18 @@ public class UserDetailsService implements org.springframework.security.core.use
             GrantedAuthority grantedAuthority = new SimpleGrantedAuthority(authority.getName());
             grantedAuthorities.add(grantedAuthority);
         }
-        return new org.springframework.security.core.userdetails.User(lowercaseLogin,
+        UserDetails userDetails = new org.springframework.security.core.userdetails.User(lowercaseLogin,
             userFromDatabase.getPassword(), grantedAuthorities);
+        userCache.putUserInCache(userDetails);
+        return copyOf(userDetails);
+    }
+
+    /**
+     * The authentication manager erases the password of the principal it returns, so callers never get
+     * the cached instance. The authorities are immutable and shared.
+     */
+    private UserDetails copyOf(UserDetails userDetails) {
+        return new org.springframework.security.core.userdetails.User(userDetails.getUsername(),
+            userDetails.getPassword(), userDetails.getAuthorities());
     }
 }
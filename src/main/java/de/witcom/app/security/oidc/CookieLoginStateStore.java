@@ -0,0 +1,206 @@
+package de.witcom.app.security.oidc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+
+import de.witcom.app.service.util.RandomUtil;
+
+/**
+ * Keeps the login state in a short lived cookie on the browser, so the login round trip needs no server
+ * side session and works across nodes without sticky sessions.
+ * <p/>
+ * The cookie is encrypted (AES-CBC) and authenticated (HMAC-SHA256, encrypt-then-MAC) with keys derived
+ * from a shared secret, which therefore has to be the same on every node. There is one cookie per login,
+ * named after its state parameter, so logins in several tabs don't overwrite each other.
+ */
+public class CookieLoginStateStore implements OIDCLoginStateStore {
+
+	private final Logger log = LoggerFactory.getLogger(CookieLoginStateStore.class);
+
+	public static final String COOKIE_PREFIX = "OIDC_";
+	public static final int DEFAULT_TIME_TO_LIVE = 300;
+
+	private static final int IV_LENGTH = 16;
+	private static final int MAC_LENGTH = 32;
+
+	private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+	private final SecretKeySpec encryptionKey;
+	private final SecretKeySpec macKey;
+	private final String cookiePath;
+
+	private int timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	/**
+	 * @param secret
+	 *            shared secret the cookie keys are derived from
+	 * @param cookiePath
+	 *            path of the login callback, relative to the context path
+	 */
+	public CookieLoginStateStore(String secret, String cookiePath) {
+		if (secret == null || secret.isEmpty()) {
+			throw new IllegalArgumentException("A secret is required to seal the login state cookie");
+		}
+		byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+		this.encryptionKey = new SecretKeySpec(Arrays.copyOf(hmac(secretBytes, "oidc-login-state-enc"), 16), "AES");
+		this.macKey = new SecretKeySpec(hmac(secretBytes, "oidc-login-state-mac"), "HmacSHA256");
+		this.cookiePath = cookiePath;
+	}
+
+	@Override
+	public void save(OIDCLoginState loginState, HttpServletRequest request, HttpServletResponse response) {
+		Cookie cookie = new Cookie(COOKIE_PREFIX + loginState.getState(), seal(loginState));
+		cookie.setMaxAge(timeToLive);
+		cookie.setPath(request.getContextPath() + cookiePath);
+		cookie.setHttpOnly(true);
+		cookie.setSecure(request.isSecure());
+		response.addCookie(cookie);
+	}
+
+	@Override
+	public OIDCLoginState load(String state, HttpServletRequest request, HttpServletResponse response) {
+		if (state == null || request.getCookies() == null) {
+			return null;
+		}
+		String name = COOKIE_PREFIX + state;
+		for (Cookie cookie : request.getCookies()) {
+			if (name.equals(cookie.getName())) {
+				// a state can only be used once
+				Cookie expired = new Cookie(name, "");
+				expired.setMaxAge(0);
+				expired.setPath(request.getContextPath() + cookiePath);
+				expired.setHttpOnly(true);
+				expired.setSecure(request.isSecure());
+				response.addCookie(expired);
+
+				OIDCLoginState loginState = unseal(cookie.getValue());
+				if (loginState == null || !state.equals(loginState.getState())) {
+					return null;
+				}
+				if (System.currentTimeMillis() - loginState.getCreatedAt() > TimeUnit.SECONDS.toMillis(timeToLive)) {
+					log.debug("Login state for {} has expired", loginState.getIssuer());
+					return null;
+				}
+				return loginState;
+			}
+		}
+		return null;
+	}
+
+	String seal(OIDCLoginState loginState) {
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			RandomUtil.secureRandom().nextBytes(iv);
+
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			byte[] cipherText = cipher.doFinal(serialize(loginState));
+
+			byte[] sealed = new byte[IV_LENGTH + cipherText.length + MAC_LENGTH];
+			System.arraycopy(iv, 0, sealed, 0, IV_LENGTH);
+			System.arraycopy(cipherText, 0, sealed, IV_LENGTH, cipherText.length);
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(macKey);
+			mac.update(sealed, 0, IV_LENGTH + cipherText.length);
+			mac.doFinal(sealed, IV_LENGTH + cipherText.length);
+
+			return ENCODING.encode(sealed);
+		} catch (GeneralSecurityException | IOException e) {
+			throw new IllegalStateException("Unable to seal login state", e);
+		}
+	}
+
+	/**
+	 * @return the login state, or null if the value was not sealed by us or has been tampered with
+	 */
+	OIDCLoginState unseal(String value) {
+		try {
+			byte[] sealed = ENCODING.decode(value);
+			if (sealed.length < IV_LENGTH + MAC_LENGTH + 16) {
+				return null;
+			}
+			int macOffset = sealed.length - MAC_LENGTH;
+
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(macKey);
+			mac.update(sealed, 0, macOffset);
+			byte[] expected = mac.doFinal();
+			if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(sealed, macOffset, sealed.length))) {
+				log.warn("Login state cookie with an invalid signature received");
+				return null;
+			}
+
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(sealed, 0, IV_LENGTH));
+			return deserialize(cipher.doFinal(sealed, IV_LENGTH, macOffset - IV_LENGTH));
+		} catch (IllegalArgumentException | GeneralSecurityException | IOException e) {
+			log.debug("Unable to read login state cookie", e);
+			return null;
+		}
+	}
+
+	private static byte[] serialize(OIDCLoginState loginState) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(loginState.getCreatedAt());
+		writeNullable(out, loginState.getState());
+		writeNullable(out, loginState.getNonce());
+		writeNullable(out, loginState.getIssuer());
+		writeNullable(out, loginState.getRedirectUri());
+		writeNullable(out, loginState.getTarget());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static OIDCLoginState deserialize(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		long createdAt = in.readLong();
+		return new OIDCLoginState(readNullable(in), readNullable(in), readNullable(in), readNullable(in), readNullable(in), createdAt);
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static byte[] hmac(byte[] key, String label) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			return mac.doFinal(label.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	public void setTimeToLive(int timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+}
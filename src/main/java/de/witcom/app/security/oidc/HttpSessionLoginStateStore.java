@@ -0,0 +1,70 @@
+package de.witcom.app.security.oidc;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Keeps the login state in session attributes. Needs sticky sessions or session replication when
+ * running several nodes.
+ */
+public class HttpSessionLoginStateStore implements OIDCLoginStateStore {
+
+	protected final static String REDIRECT_URI_SESION_VARIABLE = "redirect_uri";
+	protected final static String STATE_SESSION_VARIABLE = "state";
+	protected final static String NONCE_SESSION_VARIABLE = "nonce";
+	protected final static String ISSUER_SESSION_VARIABLE = "issuer";
+	protected static final String TARGET_SESSION_VARIABLE = "target";
+
+	@Override
+	public void save(OIDCLoginState loginState, HttpServletRequest request, HttpServletResponse response) {
+		HttpSession session = request.getSession();
+		session.setAttribute(STATE_SESSION_VARIABLE, loginState.getState());
+		session.setAttribute(NONCE_SESSION_VARIABLE, loginState.getNonce());
+		session.setAttribute(ISSUER_SESSION_VARIABLE, loginState.getIssuer());
+		session.setAttribute(REDIRECT_URI_SESION_VARIABLE, loginState.getRedirectUri());
+		if (loginState.getTarget() != null) {
+			session.setAttribute(TARGET_SESSION_VARIABLE, loginState.getTarget());
+		} else {
+			session.removeAttribute(TARGET_SESSION_VARIABLE);
+		}
+	}
+
+	@Override
+	public OIDCLoginState load(String state, HttpServletRequest request, HttpServletResponse response) {
+		HttpSession session = request.getSession(false);
+		if (session == null) {
+			return null;
+		}
+		String issuer = getStoredSessionString(session, ISSUER_SESSION_VARIABLE);
+		if (issuer == null) {
+			return null;
+		}
+		OIDCLoginState loginState = new OIDCLoginState(
+				getStoredSessionString(session, STATE_SESSION_VARIABLE),
+				getStoredSessionString(session, NONCE_SESSION_VARIABLE),
+				issuer,
+				getStoredSessionString(session, REDIRECT_URI_SESION_VARIABLE),
+				getStoredSessionString(session, TARGET_SESSION_VARIABLE));
+
+		// a state can only be used once
+		session.removeAttribute(STATE_SESSION_VARIABLE);
+		session.removeAttribute(NONCE_SESSION_VARIABLE);
+		session.removeAttribute(ISSUER_SESSION_VARIABLE);
+		session.removeAttribute(REDIRECT_URI_SESION_VARIABLE);
+		session.removeAttribute(TARGET_SESSION_VARIABLE);
+		return loginState;
+	}
+
+	/**
+	 * Get the named stored session variable as a string. Return null if not found or not a string.
+	 */
+	private static String getStoredSessionString(HttpSession session, String key) {
+		Object o = session.getAttribute(key);
+		if (o != null && o instanceof String) {
+			return o.toString();
+		} else {
+			return null;
+		}
+	}
+}
@@ -5,23 +5,23 @@ import static org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod.SECRET_BASIC
 import static org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod.SECRET_JWT;
 
 import java.io.IOException;
-import java.math.BigInteger;
-import java.net.URI;
-import java.security.SecureRandom;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.SystemDefaultHttpClient;
 import org.mitre.jwt.signer.service.JwtSigningAndValidationService;
-import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
 import org.mitre.jwt.signer.service.impl.SymmetricCacheService;
 import org.mitre.oauth2.model.RegisteredClient;
 import org.mitre.openid.connect.client.OIDCAuthenticationFilter;
@@ -36,23 +36,30 @@ import org.mitre.openid.connect.client.service.ServerConfigurationService;
 import org.mitre.openid.connect.client.service.impl.StaticAuthRequestOptionsService;
 import org.mitre.openid.connect.config.ServerConfiguration;
 import org.mitre.openid.connect.model.OIDCAuthenticationToken;
+import org.mitre.openid.connect.model.UserInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.client.ClientHttpRequest;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
+import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+
+import de.witcom.app.service.util.RandomUtil;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
@@ -60,12 +67,14 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.nimbusds.jose.Algorithm;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.util.Base64;
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.PlainJWT;
 import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
@@ -74,20 +83,21 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	
 	private Logger logger = LoggerFactory.getLogger(OIDCAuthFilter.class);
 
-	protected final static String REDIRECT_URI_SESION_VARIABLE = "redirect_uri";
-	protected final static String STATE_SESSION_VARIABLE = "state";
-	protected final static String NONCE_SESSION_VARIABLE = "nonce";
-	protected final static String ISSUER_SESSION_VARIABLE = "issuer";
-	protected static final String TARGET_SESSION_VARIABLE = "target";
-	protected final static int HTTP_SOCKET_TIMEOUT = 30000;
+	protected static final String TARGET_REQUEST_ATTRIBUTE = OIDCAuthFilter.class.getName() + ".target";
 
-	protected final static String FILTER_PROCESSES_URL = "/auth/openid_connect_login";
+	public final static String FILTER_PROCESSES_URL = "/auth/openid_connect_login";
 
 	// Allow for time sync issues by having a window of X seconds.
 	private int timeSkewAllowance = 300;
 
-	@Autowired
-	private JWKSetCacheService validationServices;
+	// keys of the provider, id token signatures are only checked when it has a JWKS URI
+	private OIDCKeyStore keyStore;
+
+	// state, nonce, issuer etc. of logins in progress
+	private OIDCLoginStateStore loginStateStore = new HttpSessionLoginStateStore();
+
+	// claims of id tokens we have already verified
+	private OIDCVerifiedTokenCache verifiedTokenCache;
 
 	@Autowired(required=false)
 	private SymmetricCacheService symmetricCacheService;
@@ -106,7 +116,19 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	private TargetLinkURIAuthenticationSuccessHandler targetSuccessHandler = new TargetLinkURIAuthenticationSuccessHandler();
 	private TargetLinkURIChecker deepLinkFilter;
 
-	protected int httpSocketTimeout = HTTP_SOCKET_TIMEOUT;
+	// pooled HTTP client shared by all calls to the IdP
+	private OIDCHttpClient httpClient;
+
+	// per issuer HTTP clients and key stores, the fields above are used for issuers it does not know
+	private OIDCIssuerRegistry issuerRegistry;
+
+	// async login pipeline, used when a login executor is configured
+	private AsyncTaskExecutor loginExecutor;
+	private AsyncTaskExecutor userInfoExecutor;
+	private OIDCUserInfoFetcher userInfoFetcher;
+	private long asyncLoginTimeout = 30000;
+
+	private SessionAuthenticationStrategy sessionStrategy = new NullAuthenticatedSessionStrategy();
 
 	/**
 	 * OpenIdConnectAuthenticationFilter constructor
@@ -123,14 +145,15 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 
 		// if our JOSE validators don't get wired in, drop defaults into place
 
-		if (validationServices == null) {
-			validationServices = new JWKSetCacheService();
-		}
-
 		if (symmetricCacheService == null) {
 			symmetricCacheService = new SymmetricCacheService();
 		}
 
+		if (httpClient == null) {
+			httpClient = new OIDCHttpClient("default");
+			httpClient.afterPropertiesSet();
+		}
+
 	}
 
 	/*
@@ -154,6 +177,12 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 
 		} else if (!Strings.isNullOrEmpty(request.getParameter("code"))) {
 
+			if (loginExecutor != null && request.isAsyncSupported()) {
+				// the login is completed on the login executor, nothing to return on this thread
+				handleAuthorizationCodeResponseAsync(request, response);
+				return null;
+			}
+
 			// we got back the code, need to process this to get our tokens
 			Authentication auth = handleAuthorizationCodeResponse(request, response);
 			return auth;
@@ -180,8 +209,6 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	 */
 	protected void handleAuthorizationRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-		HttpSession session = request.getSession();
-
 		IssuerServiceResponse issResp = issuerService.getIssuer(request);
 
 		if (issResp == null) {
@@ -194,10 +221,8 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 		} else {
 			String issuer = issResp.getIssuer();
 
-			if (!Strings.isNullOrEmpty(issResp.getTargetLinkUri())) {
-				// there's a target URL in the response, we should save this so we can forward to it later
-				session.setAttribute(TARGET_SESSION_VARIABLE, issResp.getTargetLinkUri());
-			}
+			// if there's a target URL in the response, we save it with the login state so we can forward to it later
+			String target = Strings.emptyToNull(issResp.getTargetLinkUri());
 
 			if (Strings.isNullOrEmpty(issuer)) {
 				logger.error("No issuer found: " + issuer);
@@ -210,9 +235,6 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 				throw new AuthenticationServiceException("No server configuration found for issuer: " + issuer);
 			}
 
-
-			session.setAttribute(ISSUER_SESSION_VARIABLE, serverConfig.getIssuer());
-
 			RegisteredClient clientConfig = clients.getClientConfiguration(serverConfig);
 			if (clientConfig == null) {
 				logger.error("No client configuration found for issuer: " + issuer);
@@ -227,13 +249,14 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 				// otherwise our redirect URI is this current URL, with no query parameters
 				redirectUri = request.getRequestURL().toString();
 			}
-			session.setAttribute(REDIRECT_URI_SESION_VARIABLE, redirectUri);
 
 			// this value comes back in the id token and is checked there
-			String nonce = createNonce(session);
+			String nonce = createNonce();
 
 			// this value comes back in the auth code response
-			String state = createState(session);
+			String state = createState();
+
+			loginStateStore.save(new OIDCLoginState(state, nonce, serverConfig.getIssuer(), redirectUri, target), request, response);
 
 			Map<String, String> options = authOptions.getOptions(serverConfig, clientConfig, request);
 
@@ -254,83 +277,235 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	 */
 	protected Authentication handleAuthorizationCodeResponse(HttpServletRequest request, HttpServletResponse response) {
 
-		String authorizationCode = request.getParameter("code");
+		CodeExchange exchange = readAuthorizationCodeResponse(request, response);
+		if (exchange == null) {
+			return null;
+		}
 
-		HttpSession session = request.getSession();
+		TokenSet tokens = exchangeAuthorizationCode(exchange);
+		ReadOnlyJWTClaimsSet idClaims = verifiedIdTokenClaims(exchange, tokens);
+		validateIdTokenClaims(exchange, idClaims);
 
-		// check for state, if it doesn't match we bail early
-		String storedState = getStoredState(session);
-		if (!Strings.isNullOrEmpty(storedState)) {
-			String state = request.getParameter("state");
-			if (!storedState.equals(state)) {
-				throw new AuthenticationServiceException("State parameter mismatch on return. Expected " + storedState + " got " + state);
+		return authenticateIdToken(exchange, tokens, idClaims, null);
+	}
+
+	/**
+	 * Process the authorization code response without holding the container thread: the token
+	 * request, id token validation and userinfo request run on the login executor and the
+	 * response is completed from there.
+	 *
+	 * @param request
+	 *            The request from which to extract parameters and perform the
+	 *            authentication
+	 * @param response
+	 */
+	protected void handleAuthorizationCodeResponseAsync(final HttpServletRequest request, final HttpServletResponse response)
+			throws IOException, ServletException {
+
+		// the login state is read while we are still on the container thread
+		final CodeExchange exchange = readAuthorizationCodeResponse(request, response);
+		if (exchange == null) {
+			return;
+		}
+
+		final AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(asyncLoginTimeout);
+
+		// whoever flips this first (worker or timeout) writes the response
+		final AtomicBoolean responded = new AtomicBoolean(false);
+
+		asyncContext.addListener(new AsyncListener() {
+
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (responded.compareAndSet(false, true)) {
+					logger.warn("Login timed out after {} ms waiting for the identity provider", asyncLoginTimeout);
+					try {
+						unsuccessfulAuthentication(request, response,
+								new AuthenticationServiceException("Timed out waiting for the identity provider"));
+					} catch (ServletException e) {
+						throw new IOException(e);
+					} finally {
+						asyncContext.complete();
+					}
+				}
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		});
+
+		try {
+			loginExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					completeAsyncLogin(exchange, request, response, asyncContext, responded);
+				}
+			});
+		} catch (TaskRejectedException e) {
+			if (responded.compareAndSet(false, true)) {
+				try {
+					unsuccessfulAuthentication(request, response,
+							new AuthenticationServiceException("Too many concurrent logins, please try again", e));
+				} finally {
+					asyncContext.complete();
+				}
+			}
+		}
+	}
+
+	private void completeAsyncLogin(CodeExchange exchange, HttpServletRequest request, HttpServletResponse response,
+			AsyncContext asyncContext, AtomicBoolean responded) {
+
+		Authentication authResult = null;
+		AuthenticationException failed = null;
+		Future<UserInfo> userInfo = null;
+
+		try {
+			TokenSet tokens = exchangeAuthorizationCode(exchange);
+			ReadOnlyJWTClaimsSet idClaims = cachedIdTokenClaims(tokens);
+			if (idClaims != null) {
+				userInfo = prefetchUserInfo(exchange, tokens, idClaims);
+			} else {
+				JWT idToken = parseIdToken(tokens);
+
+				// fetch the userinfo while we validate the id token
+				userInfo = prefetchUserInfo(exchange, tokens, unverifiedClaims(idToken));
+				idClaims = verifyIdToken(exchange, tokens, idToken);
+			}
+			validateIdTokenClaims(exchange, idClaims);
+
+			authResult = authenticateIdToken(exchange, tokens, idClaims, userInfo);
+			if (authResult != null) {
+				sessionStrategy.onAuthentication(authResult, request, response);
+			}
+		} catch (AuthenticationException e) {
+			failed = e;
+		} catch (RuntimeException e) {
+			logger.error("Unexpected error during login", e);
+			failed = new AuthenticationServiceException("Login failed", e);
+		} finally {
+			if (userInfo != null && failed != null) {
+				userInfo.cancel(true);
+			}
+		}
+
+		if (!responded.compareAndSet(false, true)) {
+			logger.warn("Login finished after the request timed out, discarding the result");
+			return;
+		}
+
+		try {
+			if (failed != null) {
+				unsuccessfulAuthentication(request, response, failed);
+			} else if (authResult != null) {
+				// the container thread has already left the security filter chain, so store the context ourselves
+				SecurityContext context = SecurityContextHolder.createEmptyContext();
+				context.setAuthentication(authResult);
+				request.getSession().setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, context);
+
+				successfulAuthentication(request, response, null, authResult);
 			}
+		} catch (Exception e) {
+			logger.error("Unable to send login response", e);
+		} finally {
+			SecurityContextHolder.clearContext();
+			asyncContext.complete();
+		}
+	}
+
+	/**
+	 * Check the state and look up the configuration for the issuer we set out to talk to.
+	 *
+	 * @return the parameters for the token request, or null if there is no login in progress
+	 */
+	protected CodeExchange readAuthorizationCodeResponse(HttpServletRequest request, HttpServletResponse response) {
+
+		String state = request.getParameter("state");
+		OIDCLoginState loginState = loginStateStore.load(state, request, response);
+		if (loginState == null) {
+			logger.debug("No login in progress for state " + state);
+			return null;
+		}
+
+		// check for state, if it doesn't match we bail early
+		if (!Strings.isNullOrEmpty(loginState.getState()) && !loginState.getState().equals(state)) {
+			throw new AuthenticationServiceException("State parameter mismatch on return. Expected " + loginState.getState() + " got " + state);
 		}
 
 		// look up the issuer that we set out to talk to
-		String issuer = getStoredSessionString(session, ISSUER_SESSION_VARIABLE);
+		String issuer = loginState.getIssuer();
 		logger.debug("Issuer " + issuer);
 		if (Strings.isNullOrEmpty(issuer)){
 			return null;
 		}
 
-		// pull the configurations based on that issuer
-		ServerConfiguration serverConfig = servers.getServerConfiguration(issuer);
-		final RegisteredClient clientConfig = clients.getClientConfiguration(serverConfig);
-
-		MultiValueMap<String, String> form = new LinkedMultiValueMap<String, String>();
-		form.add("grant_type", "authorization_code");
-		form.add("code", authorizationCode);
-
-		String redirectUri = getStoredSessionString(session, REDIRECT_URI_SESION_VARIABLE);
-		if (redirectUri != null) {
-			form.add("redirect_uri", redirectUri);
+		if (loginState.getTarget() != null) {
+			// picked up by the success handler
+			request.setAttribute(TARGET_REQUEST_ATTRIBUTE, loginState.getTarget());
 		}
 
-		// Handle Token Endpoint interaction
-		HttpClient httpClient = new SystemDefaultHttpClient();
+		CodeExchange exchange = new CodeExchange();
+		exchange.authorizationCode = request.getParameter("code");
 
-		httpClient.getParams().setParameter("http.socket.timeout", new Integer(httpSocketTimeout));
-
-		HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		// pull the configurations based on that issuer
+		exchange.serverConfig = servers.getServerConfiguration(issuer);
+		exchange.clientConfig = clients.getClientConfiguration(exchange.serverConfig);
+		exchange.redirectUri = loginState.getRedirectUri();
+		exchange.storedNonce = loginState.getNonce();
 
-		RestTemplate restTemplate;
+		return exchange;
+	}
 
-		if (SECRET_BASIC.equals(clientConfig.getTokenEndpointAuthMethod())){
-			// use BASIC auth if configured to do so
-			restTemplate = new RestTemplate(factory) {
+	/**
+	 * Trade the authorization code for tokens at the token endpoint.
+	 */
+	protected TokenSet exchangeAuthorizationCode(CodeExchange exchange) {
 
-				@Override
-				protected ClientHttpRequest createRequest(URI url, HttpMethod method) throws IOException {
-					ClientHttpRequest httpRequest = super.createRequest(url, method);
-					httpRequest.getHeaders().add("Authorization",
-							String.format("Basic %s", Base64.encode(String.format("%s:%s", clientConfig.getClientId(), clientConfig.getClientSecret())) ));
+		MultiValueMap<String, String> form = new LinkedMultiValueMap<String, String>();
+		form.add("grant_type", "authorization_code");
+		form.add("code", exchange.authorizationCode);
 
+		if (exchange.redirectUri != null) {
+			form.add("redirect_uri", exchange.redirectUri);
+		}
 
+		// Handle Token Endpoint interaction over the shared connection pool
+		HttpHeaders headers = new HttpHeaders();
 
-					return httpRequest;
-				}
-			};
+		if (SECRET_BASIC.equals(exchange.clientConfig.getTokenEndpointAuthMethod())){
+			// use BASIC auth if configured to do so
+			headers.add("Authorization",
+					String.format("Basic %s", Base64.encode(String.format("%s:%s", exchange.clientConfig.getClientId(), exchange.clientConfig.getClientSecret())) ));
 		} else {
 			// we're not doing basic auth, figure out what other flavor we have
-			restTemplate = new RestTemplate(factory);
 
-			if (SECRET_JWT.equals(clientConfig.getTokenEndpointAuthMethod()) || PRIVATE_KEY.equals(clientConfig.getTokenEndpointAuthMethod())) {
+			if (SECRET_JWT.equals(exchange.clientConfig.getTokenEndpointAuthMethod()) || PRIVATE_KEY.equals(exchange.clientConfig.getTokenEndpointAuthMethod())) {
 				// do a symmetric secret signed JWT for auth
 
 
 				JwtSigningAndValidationService signer = null;
-				JWSAlgorithm alg = clientConfig.getTokenEndpointAuthSigningAlg();
+				JWSAlgorithm alg = exchange.clientConfig.getTokenEndpointAuthSigningAlg();
 
-				if (SECRET_JWT.equals(clientConfig.getTokenEndpointAuthMethod()) &&
+				if (SECRET_JWT.equals(exchange.clientConfig.getTokenEndpointAuthMethod()) &&
 						(alg.equals(JWSAlgorithm.HS256)
 								|| alg.equals(JWSAlgorithm.HS384)
 								|| alg.equals(JWSAlgorithm.HS512))) {
 
 					// generate one based on client secret
-					signer = symmetricCacheService.getSymmetricValidtor(clientConfig.getClient());
+					signer = symmetricCacheService.getSymmetricValidtor(exchange.clientConfig.getClient());
 
-				} else if (PRIVATE_KEY.equals(clientConfig.getTokenEndpointAuthMethod())) {
+				} else if (PRIVATE_KEY.equals(exchange.clientConfig.getTokenEndpointAuthMethod())) {
 
 					// needs to be wired in to the bean
 					signer = authenticationSignerService;
@@ -346,9 +521,9 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 
 				JWTClaimsSet claimsSet = new JWTClaimsSet();
 
-				claimsSet.setIssuer(clientConfig.getClientId());
-				claimsSet.setSubject(clientConfig.getClientId());
-				claimsSet.setAudience(Lists.newArrayList(serverConfig.getTokenEndpointUri()));
+				claimsSet.setIssuer(exchange.clientConfig.getClientId());
+				claimsSet.setSubject(exchange.clientConfig.getClientId());
+				claimsSet.setAudience(Lists.newArrayList(exchange.serverConfig.getTokenEndpointUri()));
 
 				// TODO: make this configurable
 				Date exp = new Date(System.currentTimeMillis() + (60 * 1000)); // auth good for 60 seconds
@@ -366,19 +541,20 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 				form.add("client_assertion", jwt.serialize());
 			} else {
 				//Alternatively use form based auth
-				form.add("client_id", clientConfig.getClientId());
-				form.add("client_secret", clientConfig.getClientSecret());
+				form.add("client_id", exchange.clientConfig.getClientId());
+				form.add("client_secret", exchange.clientConfig.getClientSecret());
 			}
 
 		}
 
-		logger.debug("tokenEndpointURI = " + serverConfig.getTokenEndpointUri());
+		logger.debug("tokenEndpointURI = " + exchange.serverConfig.getTokenEndpointUri());
 		logger.debug("form = " + form);
 
 		String jsonString = null;
 
 		try {
-			jsonString = restTemplate.postForObject(serverConfig.getTokenEndpointUri(), form, String.class);
+			jsonString = httpClientFor(exchange).getRestTemplate().postForObject(exchange.serverConfig.getTokenEndpointUri(),
+					new HttpEntity<MultiValueMap<String, String>>(form, headers), String.class);
 		} catch (HttpClientErrorException httpClientErrorException) {
 
 			// Handle error
@@ -409,191 +585,316 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 
 			throw new AuthenticationServiceException("Unable to obtain Access Token.  Token Endpoint returned: " + error);
 
+		}
+
+		// get out all the token strings
+		TokenSet tokens = new TokenSet();
+
+		if (tokenResponse.has("access_token")) {
+			tokens.accessTokenValue = tokenResponse.get("access_token").getAsString();
 		} else {
+			throw new AuthenticationServiceException("Token Endpoint did not return an access_token: " + jsonString);
+		}
 
-			// Extract the id_token to insert into the
-			// OIDCAuthenticationToken
+		if (tokenResponse.has("id_token")) {
+			tokens.idTokenValue = tokenResponse.get("id_token").getAsString();
+		} else {
+			logger.error("Token Endpoint did not return an id_token");
+			throw new AuthenticationServiceException("Token Endpoint did not return an id_token");
+		}
 
-			// get out all the token strings
-			String accessTokenValue = null;
-			String idTokenValue = null;
-			String refreshTokenValue = null;
+		if (tokenResponse.has("refresh_token")) {
+			tokens.refreshTokenValue = tokenResponse.get("refresh_token").getAsString();
+		}
 
-			if (tokenResponse.has("access_token")) {
-				accessTokenValue = tokenResponse.get("access_token").getAsString();
-			} else {
-				throw new AuthenticationServiceException("Token Endpoint did not return an access_token: " + jsonString);
-			}
+		return tokens;
+	}
 
-			if (tokenResponse.has("id_token")) {
-				idTokenValue = tokenResponse.get("id_token").getAsString();
-			} else {
-				logger.error("Token Endpoint did not return an id_token");
-				throw new AuthenticationServiceException("Token Endpoint did not return an id_token");
-			}
+	private static ReadOnlyJWTClaimsSet unverifiedClaims(JWT idToken) {
+		try {
+			return idToken.getJWTClaimsSet();
+		} catch (ParseException e) {
+			return null;
+		}
+	}
 
-			if (tokenResponse.has("refresh_token")) {
-				refreshTokenValue = tokenResponse.get("refresh_token").getAsString();
-			}
+	private JWT parseIdToken(TokenSet tokens) {
+		try {
+			return JWTParser.parse(tokens.idTokenValue);
+		} catch (ParseException e) {
+			throw new AuthenticationServiceException("Couldn't parse idToken: ", e);
+		}
+	}
 
-			try {
-				JWT idToken = JWTParser.parse(idTokenValue);
-				
-				
+	/**
+	 * @return the claims of the id token, verified now or taken from the verified token cache
+	 */
+	private ReadOnlyJWTClaimsSet verifiedIdTokenClaims(CodeExchange exchange, TokenSet tokens) {
+		ReadOnlyJWTClaimsSet idClaims = cachedIdTokenClaims(tokens);
+		if (idClaims == null) {
+			idClaims = verifyIdToken(exchange, tokens, parseIdToken(tokens));
+		}
+		return idClaims;
+	}
+
+	private ReadOnlyJWTClaimsSet cachedIdTokenClaims(TokenSet tokens) {
+		if (verifiedTokenCache == null) {
+			return null;
+		}
+		ReadOnlyJWTClaimsSet idClaims = verifiedTokenCache.get(tokens.idTokenValue);
+		if (idClaims != null) {
+			logger.debug("Id token already verified, skipping signature validation");
+		}
+		return idClaims;
+	}
 
-				// validate our ID Token over a number of tests
-				ReadOnlyJWTClaimsSet idClaims = idToken.getJWTClaimsSet();
+	/**
+	 * Check the algorithm and signature of our ID Token
+	 *
+	 * @return the claims of the verified token
+	 */
+	protected ReadOnlyJWTClaimsSet verifyIdToken(CodeExchange exchange, TokenSet tokens, JWT idToken) {
+		try {
+			// check the signature
+			Algorithm tokenAlg = idToken.getHeader().getAlgorithm();
+			
+			Algorithm clientAlg = exchange.clientConfig.getIdTokenSignedResponseAlg();
 
-				// check the signature
-				JwtSigningAndValidationService jwtValidator = null;
+			logger.debug("Token Alg: " + tokenAlg.getName());
+			if (clientAlg != null) {
+				logger.debug("Client Alg: " + clientAlg.getName());
+			}
 
-				Algorithm tokenAlg = idToken.getHeader().getAlgorithm();
-				
-				Algorithm clientAlg = clientConfig.getIdTokenSignedResponseAlg();
+			// only tokens whose signature has been checked, or that are unsigned by configuration, may be cached
+			boolean verified = false;
+			OIDCKeyStore keyStore = keyStoreFor(exchange);
+			if (keyStore != null && keyStore.isEnabled()) {
 
-				logger.info("Token Alg: " + idToken.getHeader().getAlgorithm().getName());
-				if (clientAlg != null) {
-					logger.info("Client Alg: " + clientAlg.getName());
-				}
-				
-				/*
-				if (clientAlg != null) {
-					if (!clientAlg.equals(tokenAlg)) {
-						throw new AuthenticationServiceException("Token algorithm " + tokenAlg + " does not match expected algorithm " + clientAlg);
-					}
+				if (clientAlg != null && !clientAlg.equals(tokenAlg)) {
+					throw new AuthenticationServiceException("Token algorithm " + tokenAlg + " does not match expected algorithm " + clientAlg);
 				}
-				
+
 				if (idToken instanceof PlainJWT) {
-					
+
 					if (clientAlg == null) {
 						throw new AuthenticationServiceException("Unsigned ID tokens can only be used if explicitly configured in client.");
 					}
-					
+
 					if (tokenAlg != null && !tokenAlg.equals(JWSAlgorithm.NONE)) {
 						throw new AuthenticationServiceException("Unsigned token received, expected signature with " + tokenAlg);
 					}
+					verified = true;
 				} else if (idToken instanceof SignedJWT) {
-				
-					SignedJWT signedIdToken = (SignedJWT)idToken;
-					
-					if (tokenAlg.equals(JWSAlgorithm.HS256)
-						|| tokenAlg.equals(JWSAlgorithm.HS384)
-						|| tokenAlg.equals(JWSAlgorithm.HS512)) {
-						
-						// generate one based on client secret
-						jwtValidator = symmetricCacheService.getSymmetricValidtor(clientConfig.getClient());
-					} else {
-						// otherwise load from the server's public key
-						jwtValidator = validationServices.getValidator(serverConfig.getJwksUri());
-					}
-					
-					if (jwtValidator != null) {
-						if(!jwtValidator.validateSignature(signedIdToken)) {
-							throw new AuthenticationServiceException("Signature validation failed");
-						}
-					} else {
-						logger.error("No validation service found. Skipping signature validation");
-						throw new AuthenticationServiceException("Unable to find an appropriate signature validator for ID Token.");
-					}
-					
+
+					verifySignature(exchange, (SignedJWT) idToken);
+					verified = true;
+
 				} // TODO: encrypted id tokens
-				*/
-				// check the issuer
-				if (idClaims.getIssuer() == null) {
-					throw new AuthenticationServiceException("Id Token Issuer is null");
-				} else if (!idClaims.getIssuer().equals(serverConfig.getIssuer())){
-					throw new AuthenticationServiceException("Issuers do not match, expected " + serverConfig.getIssuer() + " got " + idClaims.getIssuer());
-				}
+			} else {
+				logger.warn("No JWKS URI configured, skipping signature validation");
+			}
 
-				// check expiration
-				if (idClaims.getExpirationTime() == null) {
-					throw new AuthenticationServiceException("Id Token does not have required expiration claim");
-				} else {
-					// it's not null, see if it's expired
-					Date now = new Date(System.currentTimeMillis() - (timeSkewAllowance * 1000));
-					if (now.after(idClaims.getExpirationTime())) {
-						throw new AuthenticationServiceException("Id Token is expired: " + idClaims.getExpirationTime());
-					}
-				}
+			ReadOnlyJWTClaimsSet idClaims = idToken.getJWTClaimsSet();
+			if (verified && verifiedTokenCache != null) {
+				verifiedTokenCache.put(tokens.idTokenValue, idClaims);
+			}
+			return idClaims;
+		} catch (ParseException e) {
+			throw new AuthenticationServiceException("Couldn't parse idToken: ", e);
+		}
+	}
 
-				// check not before
-				if (idClaims.getNotBeforeTime() != null) {
-					Date now = new Date(System.currentTimeMillis() + (timeSkewAllowance * 1000));
-					if (now.before(idClaims.getNotBeforeTime())){
-						throw new AuthenticationServiceException("Id Token not valid untill: " + idClaims.getNotBeforeTime());
-					}
+	/**
+	 * Validate the claims of our ID Token over a number of tests
+	 */
+	protected void validateIdTokenClaims(CodeExchange exchange, ReadOnlyJWTClaimsSet idClaims) {
+		try {
+			// check the issuer
+			if (idClaims.getIssuer() == null) {
+				throw new AuthenticationServiceException("Id Token Issuer is null");
+			} else if (!idClaims.getIssuer().equals(exchange.serverConfig.getIssuer())){
+				throw new AuthenticationServiceException("Issuers do not match, expected " + exchange.serverConfig.getIssuer() + " got " + idClaims.getIssuer());
+			}
+
+			// check expiration
+			if (idClaims.getExpirationTime() == null) {
+				throw new AuthenticationServiceException("Id Token does not have required expiration claim");
+			} else {
+				// it's not null, see if it's expired
+				Date now = new Date(System.currentTimeMillis() - (timeSkewAllowance * 1000));
+				if (now.after(idClaims.getExpirationTime())) {
+					throw new AuthenticationServiceException("Id Token is expired: " + idClaims.getExpirationTime());
 				}
+			}
 
-				// check issued at
-				if (idClaims.getIssueTime() == null) {
-					throw new AuthenticationServiceException("Id Token does not have required issued-at claim");
-				} else {
-					// since it's not null, see if it was issued in the future
-					Date now = new Date(System.currentTimeMillis() + (timeSkewAllowance * 1000));
-					if (now.before(idClaims.getIssueTime())) {
-						logger.error("Id Token was issued in the future: " + idClaims.getIssueTime());
-						//throw new AuthenticationServiceException("Id Token was issued in the future: " + idClaims.getIssueTime());
-					}
+			// check not before
+			if (idClaims.getNotBeforeTime() != null) {
+				Date now = new Date(System.currentTimeMillis() + (timeSkewAllowance * 1000));
+				if (now.before(idClaims.getNotBeforeTime())){
+					throw new AuthenticationServiceException("Id Token not valid untill: " + idClaims.getNotBeforeTime());
 				}
+			}
 
-				// check audience
-				if (idClaims.getAudience() == null) {
-					//throw new AuthenticationServiceException("Id token audience is null");
-					logger.error("Id token audience is null");
-				} else if (!idClaims.getAudience().contains(clientConfig.getClientId())) {
-					logger.error("Audience does not match, expected " + clientConfig.getClientId() + " got " + idClaims.getAudience());
-					//throw new AuthenticationServiceException("Audience does not match, expected " + clientConfig.getClientId() + " got " + idClaims.getAudience());
+			// check issued at
+			if (idClaims.getIssueTime() == null) {
+				throw new AuthenticationServiceException("Id Token does not have required issued-at claim");
+			} else {
+				// since it's not null, see if it was issued in the future
+				Date now = new Date(System.currentTimeMillis() + (timeSkewAllowance * 1000));
+				if (now.before(idClaims.getIssueTime())) {
+					logger.error("Id Token was issued in the future: " + idClaims.getIssueTime());
+					//throw new AuthenticationServiceException("Id Token was issued in the future: " + idClaims.getIssueTime());
 				}
+			}
 
-				// compare the nonce to our stored claim
-				String nonce = idClaims.getStringClaim("nonce");
-				if (Strings.isNullOrEmpty(nonce)) {
+			// check audience
+			if (idClaims.getAudience() == null) {
+				//throw new AuthenticationServiceException("Id token audience is null");
+				logger.error("Id token audience is null");
+			} else if (!idClaims.getAudience().contains(exchange.clientConfig.getClientId())) {
+				logger.error("Audience does not match, expected " + exchange.clientConfig.getClientId() + " got " + idClaims.getAudience());
+				//throw new AuthenticationServiceException("Audience does not match, expected " + exchange.clientConfig.getClientId() + " got " + idClaims.getAudience());
+			}
 
-					logger.error("ID token did not contain a nonce claim.");
+			// compare the nonce to our stored claim
+			String nonce = idClaims.getStringClaim("nonce");
+			if (Strings.isNullOrEmpty(nonce)) {
 
-					//throw new AuthenticationServiceException("ID token did not contain a nonce claim.");
-				}
+				logger.error("ID token did not contain a nonce claim.");
 
-				String storedNonce = getStoredNonce(session);
-				if (!nonce.equals(storedNonce)) {
-					logger.error("Possible replay attack detected! The comparison of the nonce in the returned "
-							+ "ID Token to the session " + NONCE_SESSION_VARIABLE + " failed. Expected " + storedNonce + " got " + nonce + ".");
+				//throw new AuthenticationServiceException("ID token did not contain a nonce claim.");
+			}
+
+			String storedNonce = exchange.storedNonce;
+			if (!nonce.equals(storedNonce)) {
+				logger.error("Possible replay attack detected! The comparison of the nonce in the returned "
+						+ "ID Token to the stored nonce failed. Expected " + storedNonce + " got " + nonce + ".");
 /*
-					throw new AuthenticationServiceException(
-							"Possible replay attack detected! The comparison of the nonce in the returned "
-									+ "ID Token to the session " + NONCE_SESSION_VARIABLE + " failed. Expected " + storedNonce + " got " + nonce + ".");
-									*/
-				}
+				throw new AuthenticationServiceException(
+						"Possible replay attack detected! The comparison of the nonce in the returned "
+								+ "ID Token to the stored nonce failed. Expected " + storedNonce + " got " + nonce + ".");
+								*/
+			}
 
-				// pull the subject (user id) out as a claim on the id_token
-				String userId = idClaims.getSubject();
-				logger.debug("User ID: " + userId);
+		} catch (ParseException e) {
+			throw new AuthenticationServiceException("Couldn't parse idToken: ", e);
+		}
+	}
 
-				// construct an OIDCAuthenticationToken and return a Authentication object w/the userId and the idToken
-				logger.debug("Get OIDCAuthToken");
-				
-				//OIDCAuthenticationToken token = new OIDCAuthenticationToken(userId, idClaims.getIssuer(), serverConfig, idTokenValue, accessTokenValue, refreshTokenValue);
+	private OIDCHttpClient httpClientFor(CodeExchange exchange) {
+		OIDCIssuer issuer = issuerRegistry != null ? issuerRegistry.getIssuer(exchange.serverConfig.getIssuer()) : null;
+		return issuer != null ? issuer.getHttpClient() : httpClient;
+	}
 
-				OIDCAuthToken token = new OIDCAuthToken(userId, idClaims.getIssuer(), serverConfig, idTokenValue, accessTokenValue, refreshTokenValue);
-				logger.debug("Get Authentication object for token " + token.getName());
-				
-			
-				Authentication authentication = this.getAuthenticationManager().authenticate(token);
-				
-				Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-				logger.debug("Context {}",SecurityContextHolder.getContext());
-				//logger.debug("Principal {}",SecurityContextHolder.getContext().getAuthentication().getPrincipal());
-				//SecurityContextHolder.getContext().setAuthentication(auth);
-				//logger.debug("Context {}",SecurityContextHolder.getContext());
-
-				return authentication;
-			} catch (ParseException e) {
-				throw new AuthenticationServiceException("Couldn't parse idToken: ", e);
+	private OIDCKeyStore keyStoreFor(CodeExchange exchange) {
+		OIDCIssuer issuer = issuerRegistry != null ? issuerRegistry.getIssuer(exchange.serverConfig.getIssuer()) : null;
+		return issuer != null ? issuer.getKeyStore() : keyStore;
+	}
+
+	private void verifySignature(CodeExchange exchange, SignedJWT signedIdToken) {
+		JWSAlgorithm tokenAlg = signedIdToken.getHeader().getAlgorithm();
+		boolean valid;
+		if (tokenAlg.equals(JWSAlgorithm.HS256)
+				|| tokenAlg.equals(JWSAlgorithm.HS384)
+				|| tokenAlg.equals(JWSAlgorithm.HS512)) {
+
+			// generate one based on client secret
+			JwtSigningAndValidationService jwtValidator = symmetricCacheService.getSymmetricValidtor(exchange.clientConfig.getClient());
+			if (jwtValidator == null) {
+				throw new AuthenticationServiceException("Unable to find an appropriate signature validator for ID Token.");
+			}
+			valid = jwtValidator.validateSignature(signedIdToken);
+		} else {
+			// otherwise use the server's public key
+			try {
+				valid = keyStoreFor(exchange).verify(signedIdToken);
+			} catch (JOSEException e) {
+				throw new AuthenticationServiceException("Unable to validate ID Token signature", e);
+			}
+		}
+		if (!valid) {
+			throw new AuthenticationServiceException("Signature validation failed");
+		}
+	}
+
+	/**
+	 * Start the userinfo request for the (not yet validated) id token on the userinfo executor.
+	 * The provider still compares the returned subject with the validated one.
+	 *
+	 * @return the pending userinfo, or null if it will be fetched later by the provider
+	 */
+	private Future<UserInfo> prefetchUserInfo(CodeExchange exchange, TokenSet tokens, ReadOnlyJWTClaimsSet claims) {
+		if (userInfoFetcher == null || userInfoExecutor == null || claims == null) {
+			return null;
+		}
+		try {
+			if (claims.getSubject() == null || claims.getIssuer() == null) {
+				return null;
 			}
+			final OIDCAuthToken shuttle = new OIDCAuthToken(claims.getSubject(), claims.getIssuer(), exchange.serverConfig,
+					tokens.idTokenValue, tokens.accessTokenValue, tokens.refreshTokenValue);
+			return userInfoExecutor.submit(new Callable<UserInfo>() {
+
+				@Override
+				public UserInfo call() {
+					return userInfoFetcher.loadUserInfo(shuttle);
+				}
+			});
+		} catch (TaskRejectedException e) {
+			logger.debug("Userinfo executor saturated, the provider will fetch the userinfo itself");
+			return null;
+		}
+	}
 
+	/**
+	 * Hand the validated id token (and the userinfo, if we already have it) to the authentication manager.
+	 */
+	protected Authentication authenticateIdToken(CodeExchange exchange, TokenSet tokens, ReadOnlyJWTClaimsSet idClaims, Future<UserInfo> userInfo) {
 
+		// pull the subject (user id) out as a claim on the id_token
+		String userId = idClaims.getSubject();
+		logger.debug("User ID: " + userId);
 
+		UserInfo prefetchedUserInfo = null;
+		if (userInfo != null) {
+			try {
+				prefetchedUserInfo = userInfo.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AuthenticationServiceException("Interrupted while waiting for userinfo", e);
+			} catch (ExecutionException e) {
+				logger.warn("Error fetching userinfo", e.getCause());
+			}
 		}
+
+		// construct an OIDCAuthenticationToken and return a Authentication object w/the userId and the idToken
+		logger.debug("Get OIDCAuthToken");
+
+		OIDCAuthToken token = new OIDCAuthToken(userId, idClaims.getIssuer(), exchange.serverConfig, prefetchedUserInfo,
+				tokens.idTokenValue, tokens.accessTokenValue, tokens.refreshTokenValue);
+		logger.debug("Get Authentication object for token " + token.getName());
+
+		return this.getAuthenticationManager().authenticate(token);
+	}
+
+	/**
+	 * Parameters of an authorization code response, read from the request and the login state.
+	 */
+	protected static class CodeExchange {
+		private String authorizationCode;
+		private String redirectUri;
+		private String storedNonce;
+		private ServerConfiguration serverConfig;
+		private RegisteredClient clientConfig;
+	}
+
+	/**
+	 * Token strings returned by the token endpoint.
+	 */
+	protected static class TokenSet {
+		private String accessTokenValue;
+		private String idTokenValue;
+		private String refreshTokenValue;
 	}
 
 	/**
@@ -617,63 +918,29 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	}
 
 	/**
-	 * Get the named stored session variable as a string. Return null if not found or not a string.
-	 * @param session
-	 * @param key
+	 * Create a cryptographically random nonce
 	 * @return
 	 */
-	private static String getStoredSessionString(HttpSession session, String key) {
-		Object o = session.getAttribute(key);
-		if (o != null && o instanceof String) {
-			return o.toString();
-		} else {
-			return null;
-		}
+	protected static String createNonce() {
+		return RandomUtil.generateToken(16);
 	}
 
 	/**
-	 * Create a cryptographically random nonce and store it in the session
-	 * @param session
+	 * Create a cryptographically random state
 	 * @return
 	 */
-	protected static String createNonce(HttpSession session) {
-		String nonce = new BigInteger(50, new SecureRandom()).toString(16);
-		session.setAttribute(NONCE_SESSION_VARIABLE, nonce);
-
-		return nonce;
+	protected static String createState() {
+		return RandomUtil.generateToken(16);
 	}
 
-	/**
-	 * Get the nonce we stored in the session
-	 * @param session
-	 * @return
-	 */
-	protected static String getStoredNonce(HttpSession session) {
-		return getStoredSessionString(session, NONCE_SESSION_VARIABLE);
-	}
-
-	/**
-	 * Create a cryptographically random state and store it in the session
-	 * @param session
-	 * @return
-	 */
-	protected static String createState(HttpSession session) {
-		String state = new BigInteger(50, new SecureRandom()).toString(16);
-		session.setAttribute(STATE_SESSION_VARIABLE, state);
-
-		return state;
-	}
 
-	/**
-	 * Get the state we stored in the session
-	 * @param session
-	 * @return
-	 */
-	protected static String getStoredState(HttpSession session) {
-		return getStoredSessionString(session, STATE_SESSION_VARIABLE);
+	@Override
+	public void setSessionAuthenticationStrategy(SessionAuthenticationStrategy sessionStrategy) {
+		super.setSessionAuthenticationStrategy(sessionStrategy);
+		// the async login applies it itself
+		this.sessionStrategy = sessionStrategy;
 	}
 
-
 	@Override
 	public void setAuthenticationSuccessHandler(AuthenticationSuccessHandler successHandler) {
 		targetSuccessHandler.passthrough = successHandler;
@@ -697,14 +964,10 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 				HttpServletResponse response, Authentication authentication)
 						throws IOException, ServletException {
 
-			HttpSession session = request.getSession();
-
 			// check to see if we've got a target
-			String target = getStoredSessionString(session, TARGET_SESSION_VARIABLE);
+			String target = (String) request.getAttribute(TARGET_REQUEST_ATTRIBUTE);
 
 			if (!Strings.isNullOrEmpty(target)) {
-				session.removeAttribute(TARGET_SESSION_VARIABLE);
-
 				target = deepLinkFilter.filter(target);
 
 				response.sendRedirect(target);
@@ -732,17 +995,33 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 	}
 
 	/**
-	 * @return the validationServices
+	 * @return the keyStore
 	 */
-	public JWKSetCacheService getValidationServices() {
-		return validationServices;
+	public OIDCKeyStore getKeyStore() {
+		return keyStore;
 	}
 
 	/**
-	 * @param validationServices the validationServices to set
+	 * @param keyStore the keyStore to set
 	 */
-	public void setValidationServices(JWKSetCacheService validationServices) {
-		this.validationServices = validationServices;
+	public void setKeyStore(OIDCKeyStore keyStore) {
+		this.keyStore = keyStore;
+	}
+
+	public OIDCLoginStateStore getLoginStateStore() {
+		return loginStateStore;
+	}
+
+	public void setLoginStateStore(OIDCLoginStateStore loginStateStore) {
+		this.loginStateStore = loginStateStore;
+	}
+
+	public OIDCVerifiedTokenCache getVerifiedTokenCache() {
+		return verifiedTokenCache;
+	}
+
+	public void setVerifiedTokenCache(OIDCVerifiedTokenCache verifiedTokenCache) {
+		this.verifiedTokenCache = verifiedTokenCache;
 	}
 
 	/**
@@ -815,6 +1094,54 @@ public class OIDCAuthFilter extends AbstractAuthenticationProcessingFilter {
 		this.authOptions = authOptions;
 	}
 
+	public OIDCHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	public void setHttpClient(OIDCHttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	public OIDCIssuerRegistry getIssuerRegistry() {
+		return issuerRegistry;
+	}
+
+	public void setIssuerRegistry(OIDCIssuerRegistry issuerRegistry) {
+		this.issuerRegistry = issuerRegistry;
+	}
+
+	public AsyncTaskExecutor getLoginExecutor() {
+		return loginExecutor;
+	}
+
+	public void setLoginExecutor(AsyncTaskExecutor loginExecutor) {
+		this.loginExecutor = loginExecutor;
+	}
+
+	public AsyncTaskExecutor getUserInfoExecutor() {
+		return userInfoExecutor;
+	}
+
+	public void setUserInfoExecutor(AsyncTaskExecutor userInfoExecutor) {
+		this.userInfoExecutor = userInfoExecutor;
+	}
+
+	public OIDCUserInfoFetcher getUserInfoFetcher() {
+		return userInfoFetcher;
+	}
+
+	public void setUserInfoFetcher(OIDCUserInfoFetcher userInfoFetcher) {
+		this.userInfoFetcher = userInfoFetcher;
+	}
+
+	public long getAsyncLoginTimeout() {
+		return asyncLoginTimeout;
+	}
+
+	public void setAsyncLoginTimeout(long asyncLoginTimeout) {
+		this.asyncLoginTimeout = asyncLoginTimeout;
+	}
+
 	public SymmetricCacheService getSymmetricCacheService() {
 		return symmetricCacheService;
 	}
@@ -33,6 +33,7 @@ import de.witcom.app.domain.ExternalAccount;
 import de.witcom.app.domain.ExternalAccountProvider;
 import de.witcom.app.domain.User;
 import de.witcom.app.repository.AuthorityRepository;
+import de.witcom.app.repository.ExternalAccountRepository;
 import de.witcom.app.repository.UserRepository;
 import de.witcom.app.security.SecurityUtils;
 import de.witcom.app.security.UserDetailsService;
@@ -50,10 +51,16 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 	private GrantedAuthoritiesMapper authoritiesMapper = new NamedAdminAuthoritiesMapper();
 	
 	private ExternalAccountProvider provider;
+
+	// maps the issuer of a token to its provider, the provider above is used for unknown issuers
+	private OIDCIssuerRegistry issuerRegistry;
 	
 	@Inject
-    private UserRepository userRepository;
+	private ExternalAccountRepository externalAccountRepository;
 	
+	@Inject
+	private UserRepository userRepository;
+
 	@Inject
 	private AuthorityRepository authorityRepository;
 
@@ -81,10 +88,15 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 			UserDetails userDetails = null;
 
 			OIDCAuthToken token = (OIDCAuthToken) authentication;
+			ExternalAccountProvider provider = providerFor(token.getIssuer());
 
 			Collection<SubjectIssuerGrantedAuthority> authorities = Lists.newArrayList(new SubjectIssuerGrantedAuthority(token.getSub(), token.getIssuer()));
 			
-			UserInfo userInfo = userInfoFetcher.loadUserInfo(token);
+			// the filter may already have fetched the userinfo while it validated the id token
+			UserInfo userInfo = token.getUserInfo();
+			if (userInfo == null) {
+				userInfo = userInfoFetcher.loadUserInfo(token);
+			}
 
 			
 			if (userInfo == null) {
@@ -104,8 +116,8 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 				} catch (UsernameNotFoundException ex){
 					logger.debug("User {} not found, creating new one");
 					try {
-						this.registerExternalAccount(userInfo);
-						userDetails = loadUserByOIDCId(token.getSub(), provider);
+						// the new user is returned with its authorities, no need to load it again
+						userDetails = toUserDetails(this.registerExternalAccount(userInfo, provider));
 						
 					} catch (Exception e) {
 						logger.error("Fehler {}",e);
@@ -144,12 +156,16 @@ public class OIDCAuthProvider implements AuthenticationProvider {
     public UserDetails loadUserByOIDCId(final String login,final ExternalAccountProvider provider){
     	
     	logger.debug("Authenticating {} from Provider {}",login,provider);
-		logger.debug("Repository {}",userRepository);
-		if (userRepository == null){
-			throw new UsernameNotFoundException("UserRepository is NULL");
+		logger.debug("Repository {}",externalAccountRepository);
+		if (externalAccountRepository == null){
+			throw new UsernameNotFoundException("ExternalAccountRepository is NULL");
 		}
         String lowercaseLogin = login.toLowerCase();
-        User userFromDatabase = userRepository.getUserByExternalAccount(provider, lowercaseLogin);
+        // resolved through the natural id, account, user and authorities caches once the account has been seen,
+        // otherwise the user and the authorities are fetched in one query
+        ExternalAccount externalAccount = externalAccountRepository.findOneCachedByNaturalId(provider.name(), lowercaseLogin);
+        User userFromDatabase = externalAccount != null ? externalAccount.getUser() :
+            userRepository.findOneWithAuthoritiesByExternalAccount(provider.name(), lowercaseLogin);
         
         if (userFromDatabase == null) {
             throw new UsernameNotFoundException("User " + lowercaseLogin + " was not found in the database");
@@ -159,21 +175,22 @@ public class OIDCAuthProvider implements AuthenticationProvider {
         
         logger.debug("Got user {}",userFromDatabase.getLogin());
         
-        Collection<GrantedAuthority> grantedAuthorities = getGrantedAuthorities(userFromDatabase);
+        return toUserDetails(userFromDatabase);
+    }
+
+    private UserDetails toUserDetails(User user) {
+        Collection<GrantedAuthority> grantedAuthorities = getGrantedAuthorities(user);
         logger.debug("Login successful");
-        return new org.springframework.security.core.userdetails.User(userFromDatabase.getLogin(), "n/a", grantedAuthorities);
+        return new org.springframework.security.core.userdetails.User(user.getLogin(), "n/a", grantedAuthorities);
     }
 	
 	//@Transactional(readOnly = true)
-	private User registerExternalAccount(UserInfo userInfo) throws Exception{
+	private User registerExternalAccount(UserInfo userInfo, ExternalAccountProvider provider) throws Exception{
 		
-		UserDTO externalAuthDTO = oidcAuthAsUserDTO(userInfo);
+		UserDTO externalAuthDTO = oidcAuthAsUserDTO(userInfo, provider);
 
-        // check that there isn't already another account linked to the current external account
+        // the caller has just looked the external account up, it is not linked to another user yet
         ExternalAccount externalAccount = externalAuthDTO.getExternalAccounts().iterator().next();
-        User existingUser = userRepository.getUserByExternalAccount(externalAccount.getExternalProvider(), externalAccount.getExternalId());
-        if (existingUser != null)
-           throw new Exception("User already registered with different external account");
 
         logger.debug("Start creating user....");
         User user = userService.createUserInformation(
@@ -189,7 +206,7 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 		
 	}
 	
-	private UserDTO oidcAuthAsUserDTO(UserInfo userInfo) throws Exception{
+	private UserDTO oidcAuthAsUserDTO(UserInfo userInfo, ExternalAccountProvider provider) throws Exception{
 		
 		
 		 // build a new UserDTO from the external provider's version of the User
@@ -201,16 +218,16 @@ public class OIDCAuthProvider implements AuthenticationProvider {
         // build the ExternalAccount from the ConnectionKey
         
         
-        ExternalAccount externalAccount = new ExternalAccount(this.provider, userInfo.getSub());
+        ExternalAccount externalAccount = new ExternalAccount(provider, userInfo.getSub().toLowerCase());
 
         // check that we got the information we needed
         if (StringUtils.isBlank(firstName) || StringUtils.isBlank(lastName) || StringUtils.isBlank(email))
-        	throw new Exception(this.provider.name() + " provider failed to return required attributes");
+        	throw new Exception(provider.name() + " provider failed to return required attributes");
 
         UserDTO userDTO = new UserDTO(firstName, lastName, email, externalAccount);
 
        
-        logger.debug("Retrieved details from {} for user '{}'", this.provider, userInfo);
+        logger.debug("Retrieved details from {} for user '{}'", provider, userInfo);
 
 		
 		return userDTO;
@@ -218,6 +235,11 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 		
 	}
 
+	private ExternalAccountProvider providerFor(String issuer) {
+		OIDCIssuer entry = issuerRegistry != null ? issuerRegistry.getIssuer(issuer) : null;
+		return entry != null ? entry.getProvider() : this.provider;
+	}
+
 	/**
 	 * @param authoritiesMapper
 	 */
@@ -249,5 +271,9 @@ public class OIDCAuthProvider implements AuthenticationProvider {
 	public void setProvider(ExternalAccountProvider providerName) {
 		this.provider = providerName;
 	}
+
+	public void setIssuerRegistry(OIDCIssuerRegistry issuerRegistry) {
+		this.issuerRegistry = issuerRegistry;
+	}
 }
 
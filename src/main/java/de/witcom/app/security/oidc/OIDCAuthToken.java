@@ -71,6 +71,19 @@ public class OIDCAuthToken extends AbstractAuthenticationToken {
 			ServerConfiguration serverConfiguration,
 			String idTokenValue, String accessTokenValue, String refreshTokenValue) {
 
+		this(subject, issuer, serverConfiguration, null, idTokenValue, accessTokenValue, refreshTokenValue);
+	}
+
+	/**
+	 * Constructs OIDCAuthenticationToken for use as a data shuttle from the filter to the auth provider,
+	 * carrying userinfo the filter has already fetched (null if it has not).
+	 * 
+	 * Set to not-authenticated.
+	 */
+	public OIDCAuthToken(String subject, String issuer,
+			ServerConfiguration serverConfiguration, UserInfo userInfo,
+			String idTokenValue, String accessTokenValue, String refreshTokenValue) {
+
 		super(new ArrayList<GrantedAuthority>(0));
 		
 		String preferredUsername = subject;
@@ -84,7 +97,7 @@ public class OIDCAuthToken extends AbstractAuthenticationToken {
 		this.accessTokenValue = accessTokenValue;
 		this.refreshTokenValue = refreshTokenValue;
 
-		this.userInfo = null; // we don't have a UserInfo yet
+		this.userInfo = userInfo;
 
 		this.serverConfiguration = serverConfiguration;
 
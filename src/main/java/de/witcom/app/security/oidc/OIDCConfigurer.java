@@ -51,11 +51,21 @@ public class OIDCConfigurer extends SecurityConfigurerAdapter<DefaultSecurityFil
 		OIDCAuthFilter filter = new OIDCAuthFilter();
 		filter.setAuthenticationManager(http.getSharedObject(AuthenticationManager.class));
 		filter.setAuthenticationSuccessHandler(oidConfig.mySuccessHandler());
-		filter.setIssuerService(oidConfig.staticIssuerService());
+		filter.setIssuerService(oidConfig.oidcIssuerRegistry());
 		filter.setAuthRequestUrlBuilder(oidConfig.plainAuthRequestUrlBuilder());
-		filter.setClientConfigurationService(oidConfig.staticClientConfigurationService());
-		filter.setServerConfigurationService(oidConfig.staticServerConfigurationService());
+		filter.setClientConfigurationService(oidConfig.oidcIssuerRegistry());
+		filter.setServerConfigurationService(oidConfig.oidcIssuerRegistry());
 		filter.setAuthRequestOptionsService(oidConfig.staticAuthRequestOptionsService());
+		filter.setHttpClient(oidConfig.oidcHttpClient());
+		filter.setIssuerRegistry(oidConfig.oidcIssuerRegistry());
+		filter.setLoginStateStore(oidConfig.oidcLoginStateStore());
+		filter.setVerifiedTokenCache(oidConfig.verifiedTokenCache());
+		if (oidConfig.isAsyncLoginEnabled()) {
+			filter.setLoginExecutor(oidConfig.oidcLoginExecutor());
+			filter.setUserInfoExecutor(oidConfig.oidcUserInfoExecutor());
+			filter.setUserInfoFetcher(oidConfig.userInfoFetcher());
+			filter.setAsyncLoginTimeout(oidConfig.getAsyncLoginTimeout());
+		}
 		
 		http.authenticationProvider(
 				openIdConnectAuthenticationProvider)
@@ -0,0 +1,281 @@
+package de.witcom.app.security.oidc;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+/**
+ * Pooled, keep-alive HTTP client used for all traffic to the OpenID Connect provider
+ * (token endpoint, userinfo endpoint, JWKS).
+ * <p/>
+ * One instance is shared by every login, so TCP and TLS connections to the IdP are reused
+ * instead of being re-established for each request. Idle and expired connections are evicted
+ * by a background thread.
+ */
+public class OIDCHttpClient implements InitializingBean, DisposableBean {
+
+	private final Logger log = LoggerFactory.getLogger(OIDCHttpClient.class);
+
+	public static final int DEFAULT_MAX_TOTAL = 50;
+	public static final int DEFAULT_MAX_PER_ROUTE = 20;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final int DEFAULT_READ_TIMEOUT = 30000;
+	public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 5000;
+	public static final int DEFAULT_IDLE_TIMEOUT = 60;
+	public static final int DEFAULT_EVICTION_INTERVAL = 30;
+
+	private final String name;
+
+	private int maxTotal = DEFAULT_MAX_TOTAL;
+	private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+	private int connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+	private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private int evictionInterval = DEFAULT_EVICTION_INTERVAL;
+
+	private MetricRegistry metricRegistry;
+
+	private InstrumentedConnectionManager connectionManager;
+	private CloseableHttpClient httpClient;
+	private HttpComponentsClientHttpRequestFactory requestFactory;
+	private RestTemplate restTemplate;
+	private ScheduledExecutorService evictor;
+
+	public OIDCHttpClient(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		log.debug("Starting OIDC HTTP client pool '{}' (maxTotal={}, maxPerRoute={})", name, maxTotal, maxPerRoute);
+
+		Timer leaseTimer = null;
+		if (metricRegistry != null) {
+			leaseTimer = metricRegistry.timer(metricName("lease"));
+		}
+
+		connectionManager = new InstrumentedConnectionManager(leaseTimer);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.build();
+
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+				.build();
+
+		requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		restTemplate = new RestTemplate(requestFactory);
+
+		evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "oidc-http-evictor-" + name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+			}
+		}, evictionInterval, evictionInterval, TimeUnit.SECONDS);
+
+		if (metricRegistry != null) {
+			registerPoolGauges();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		shutdown();
+	}
+
+	public void shutdown() {
+		log.debug("Shutting down OIDC HTTP client pool '{}'", name);
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		if (metricRegistry != null) {
+			final String prefix = MetricRegistry.name(OIDCHttpClient.class, name, "pool");
+			metricRegistry.removeMatching(new MetricFilter() {
+
+				@Override
+				public boolean matches(String candidate, Metric metric) {
+					return candidate.startsWith(prefix);
+				}
+			});
+		}
+		try {
+			if (httpClient != null) {
+				httpClient.close();
+			}
+		} catch (IOException e) {
+			log.warn("Error closing OIDC HTTP client pool '{}'", name, e);
+		}
+	}
+
+	private void registerPoolGauges() {
+		metricRegistry.register(metricName("leased"), new Gauge<Integer>() {
+
+			@Override
+			public Integer getValue() {
+				return connectionManager.getTotalStats().getLeased();
+			}
+		});
+		metricRegistry.register(metricName("available"), new Gauge<Integer>() {
+
+			@Override
+			public Integer getValue() {
+				return connectionManager.getTotalStats().getAvailable();
+			}
+		});
+		metricRegistry.register(metricName("pending"), new Gauge<Integer>() {
+
+			@Override
+			public Integer getValue() {
+				return connectionManager.getTotalStats().getPending();
+			}
+		});
+		metricRegistry.register(metricName("max"), new Gauge<Integer>() {
+
+			@Override
+			public Integer getValue() {
+				return connectionManager.getTotalStats().getMax();
+			}
+		});
+		metricRegistry.register(metricName("utilization"), new RatioGauge() {
+
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(connectionManager.getTotalStats().getLeased(), connectionManager.getTotalStats().getMax());
+			}
+		});
+	}
+
+	private String metricName(String metric) {
+		return MetricRegistry.name(OIDCHttpClient.class, name, "pool", metric);
+	}
+
+	/**
+	 * @return a RestTemplate backed by the shared connection pool; it is thread-safe and must not be customized per request
+	 */
+	public RestTemplate getRestTemplate() {
+		return restTemplate;
+	}
+
+	public HttpComponentsClientHttpRequestFactory getRequestFactory() {
+		return requestFactory;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+		this.connectionRequestTimeout = connectionRequestTimeout;
+	}
+
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public void setEvictionInterval(int evictionInterval) {
+		this.evictionInterval = evictionInterval;
+	}
+
+	public void setMetricRegistry(MetricRegistry metricRegistry) {
+		this.metricRegistry = metricRegistry;
+	}
+
+	/**
+	 * Connection manager that times how long callers wait to lease a connection from the pool.
+	 */
+	private static class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+		private final Timer leaseTimer;
+
+		InstrumentedConnectionManager(Timer leaseTimer) {
+			this.leaseTimer = leaseTimer;
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest delegate = super.requestConnection(route, state);
+			if (leaseTimer == null) {
+				return delegate;
+			}
+			return new ConnectionRequest() {
+
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit tunit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					Timer.Context context = leaseTimer.time();
+					try {
+						return delegate.get(timeout, tunit);
+					} finally {
+						context.stop();
+					}
+				}
+
+				@Override
+				public boolean cancel() {
+					return delegate.cancel();
+				}
+			};
+		}
+	}
+}
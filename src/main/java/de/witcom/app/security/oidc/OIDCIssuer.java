@@ -0,0 +1,62 @@
+package de.witcom.app.security.oidc;
+
+import org.mitre.oauth2.model.RegisteredClient;
+import org.mitre.openid.connect.config.ServerConfiguration;
+
+import de.witcom.app.domain.ExternalAccountProvider;
+
+/**
+ * A registered issuer: its resolved server and client configuration, and the resources dedicated to it.
+ * Instances are never modified; a refresh registers a new instance.
+ */
+public class OIDCIssuer {
+
+	private final OIDCIssuerProperties properties;
+	private final ServerConfiguration serverConfiguration;
+	private final RegisteredClient clientConfiguration;
+	private final ExternalAccountProvider provider;
+	private final OIDCHttpClient httpClient;
+	private final OIDCKeyStore keyStore;
+
+	public OIDCIssuer(OIDCIssuerProperties properties, ServerConfiguration serverConfiguration, RegisteredClient clientConfiguration,
+			ExternalAccountProvider provider, OIDCHttpClient httpClient, OIDCKeyStore keyStore) {
+		this.properties = properties;
+		this.serverConfiguration = serverConfiguration;
+		this.clientConfiguration = clientConfiguration;
+		this.provider = provider;
+		this.httpClient = httpClient;
+		this.keyStore = keyStore;
+	}
+
+	public String getId() {
+		return properties.getId();
+	}
+
+	public String getIssuer() {
+		return serverConfiguration.getIssuer();
+	}
+
+	public OIDCIssuerProperties getProperties() {
+		return properties;
+	}
+
+	public ServerConfiguration getServerConfiguration() {
+		return serverConfiguration;
+	}
+
+	public RegisteredClient getClientConfiguration() {
+		return clientConfiguration;
+	}
+
+	public ExternalAccountProvider getProvider() {
+		return provider;
+	}
+
+	public OIDCHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	public OIDCKeyStore getKeyStore() {
+		return keyStore;
+	}
+}
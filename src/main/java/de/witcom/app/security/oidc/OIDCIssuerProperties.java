@@ -0,0 +1,121 @@
+package de.witcom.app.security.oidc;
+
+/**
+ * Configuration of one OpenID Connect issuer, as given in <code>openidconnect.issuers.&lt;id&gt;.*</code>.
+ * <p/>
+ * With discovery enabled the endpoints are read from the issuer's
+ * <code>.well-known/openid-configuration</code>; endpoints given here take precedence.
+ */
+public class OIDCIssuerProperties {
+
+	private String id;
+	private String issuer;
+	private String issuerUri;
+	private boolean discovery;
+	private String authorizationEndpointUri;
+	private String tokenEndpointUri;
+	private String userInfoUri;
+	private String jwksUri;
+	private String clientId;
+	private String clientSecret;
+	private String redirectUri;
+
+	/**
+	 * @return the registry id of the issuer, also the name of its ExternalAccountProvider
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getIssuer() {
+		return issuer;
+	}
+
+	public void setIssuer(String issuer) {
+		this.issuer = issuer;
+	}
+
+	/**
+	 * @return an alternative URL the issuer is known under, defaults to the issuer
+	 */
+	public String getIssuerUri() {
+		return issuerUri;
+	}
+
+	public void setIssuerUri(String issuerUri) {
+		this.issuerUri = issuerUri;
+	}
+
+	public boolean isDiscovery() {
+		return discovery;
+	}
+
+	public void setDiscovery(boolean discovery) {
+		this.discovery = discovery;
+	}
+
+	public String getAuthorizationEndpointUri() {
+		return authorizationEndpointUri;
+	}
+
+	public void setAuthorizationEndpointUri(String authorizationEndpointUri) {
+		this.authorizationEndpointUri = authorizationEndpointUri;
+	}
+
+	public String getTokenEndpointUri() {
+		return tokenEndpointUri;
+	}
+
+	public void setTokenEndpointUri(String tokenEndpointUri) {
+		this.tokenEndpointUri = tokenEndpointUri;
+	}
+
+	public String getUserInfoUri() {
+		return userInfoUri;
+	}
+
+	public void setUserInfoUri(String userInfoUri) {
+		this.userInfoUri = userInfoUri;
+	}
+
+	public String getJwksUri() {
+		return jwksUri;
+	}
+
+	public void setJwksUri(String jwksUri) {
+		this.jwksUri = jwksUri;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	public String getClientSecret() {
+		return clientSecret;
+	}
+
+	public void setClientSecret(String clientSecret) {
+		this.clientSecret = clientSecret;
+	}
+
+	public String getRedirectUri() {
+		return redirectUri;
+	}
+
+	public void setRedirectUri(String redirectUri) {
+		this.redirectUri = redirectUri;
+	}
+
+	@Override
+	public String toString() {
+		return "OIDCIssuerProperties{id='" + id + "', issuer='" + issuer + "', discovery=" + discovery + "}";
+	}
+}
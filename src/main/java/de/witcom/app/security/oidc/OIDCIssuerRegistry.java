@@ -0,0 +1,431 @@
+package de.witcom.app.security.oidc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod;
+import org.mitre.oauth2.model.RegisteredClient;
+import org.mitre.openid.connect.client.model.IssuerServiceResponse;
+import org.mitre.openid.connect.client.service.ClientConfigurationService;
+import org.mitre.openid.connect.client.service.IssuerService;
+import org.mitre.openid.connect.client.service.ServerConfigurationService;
+import org.mitre.openid.connect.config.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import de.witcom.app.domain.ExternalAccountProvider;
+
+/**
+ * Registry of the OpenID Connect issuers we federate with.
+ * <p/>
+ * Lookups (by issuer URL or registry id) go to an immutable snapshot that is replaced as a whole when an
+ * issuer is registered, refreshed or removed, so readers never lock. Each issuer gets its own HTTP
+ * connection pool and key store, and maps to its own {@link ExternalAccountProvider}. Issuers with
+ * discovery enabled are resolved from their <code>.well-known/openid-configuration</code> and refreshed in
+ * the background; a failed refresh keeps the previous configuration, and issuers that could not be
+ * registered at startup are retried on each refresh.
+ */
+public class OIDCIssuerRegistry implements IssuerService, ServerConfigurationService, ClientConfigurationService,
+		InitializingBean, DisposableBean {
+
+	private final Logger log = LoggerFactory.getLogger(OIDCIssuerRegistry.class);
+
+	public static final String DISCOVERY_PATH = "/.well-known/openid-configuration";
+	public static final String ISSUER_PARAMETER = "idp";
+	public static final long DEFAULT_DISCOVERY_REFRESH_INTERVAL = 3600;
+
+	/**
+	 * Creates the resources dedicated to one issuer; they are released by the registry.
+	 */
+	public interface ResourceFactory {
+
+		OIDCHttpClient createHttpClient(String issuerId);
+
+		OIDCKeyStore createKeyStore(String issuerId, String jwksUri, OIDCHttpClient httpClient);
+	}
+
+	private final ResourceFactory resourceFactory;
+
+	private final List<OIDCIssuerProperties> initialIssuers;
+
+	private String defaultIssuerId;
+
+	private long discoveryRefreshInterval = DEFAULT_DISCOVERY_REFRESH_INTERVAL;
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+	// issuers whose registration failed, retried on each refresh; guarded by writeLock
+	private final Map<String, OIDCIssuerProperties> pending = new LinkedHashMap<>();
+
+	// serializes snapshot swaps, readers only ever see complete snapshots; never held while resolving
+	private final Object writeLock = new Object();
+
+	private ScheduledExecutorService scheduler;
+
+	public OIDCIssuerRegistry(ResourceFactory resourceFactory, List<OIDCIssuerProperties> initialIssuers) {
+		this.resourceFactory = resourceFactory;
+		this.initialIssuers = new ArrayList<>(initialIssuers);
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for (OIDCIssuerProperties properties : initialIssuers) {
+			if (!Strings.isNullOrEmpty(properties.getId())) {
+				// accounts of an issuer that is not available yet must still load
+				ExternalAccountProvider.register(properties.getId().toUpperCase());
+			}
+			try {
+				registerIssuer(properties);
+			} catch (RuntimeException e) {
+				log.error("Unable to register OIDC issuer {}, retrying on the next refresh: {}", properties.getId(), e.getMessage());
+				if (!Strings.isNullOrEmpty(properties.getId())) {
+					synchronized (writeLock) {
+						pending.put(properties.getId(), properties);
+					}
+				}
+			}
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "oidc-discovery-refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				refreshDiscovery();
+			}
+		}, discoveryRefreshInterval, discoveryRefreshInterval, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		synchronized (writeLock) {
+			for (OIDCIssuer issuer : snapshot.issuers) {
+				release(issuer, null);
+			}
+			snapshot = Snapshot.EMPTY;
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Register an issuer, or replace the issuer registered under the same id. Takes effect for the next login.
+	 *
+	 * @return the registered issuer
+	 */
+	public OIDCIssuer registerIssuer(OIDCIssuerProperties properties) {
+		if (Strings.isNullOrEmpty(properties.getId())) {
+			throw new IllegalArgumentException("Issuer id is required");
+		}
+		while (true) {
+			OIDCIssuer previous = snapshot.byId.get(properties.getId());
+			OIDCIssuer issuer = resolve(properties, previous);
+			if (swap(issuer, previous, false)) {
+				return issuer;
+			}
+			// replaced or removed while we were resolving, resolve again against the current registration
+		}
+	}
+
+	public void removeIssuer(String id) {
+		OIDCIssuer previous;
+		synchronized (writeLock) {
+			pending.remove(id);
+			previous = snapshot.byId.get(id);
+			if (previous == null) {
+				return;
+			}
+			List<OIDCIssuer> issuers = new ArrayList<>(snapshot.issuers);
+			issuers.remove(previous);
+			snapshot = new Snapshot(issuers);
+		}
+		release(previous, null);
+		log.info("Removed OIDC issuer {}", id);
+	}
+
+	/**
+	 * @param issuerOrId the issuer URL (as found in id tokens) or the registry id
+	 * @return the issuer, or null if it is not registered
+	 */
+	public OIDCIssuer getIssuer(String issuerOrId) {
+		if (issuerOrId == null) {
+			return null;
+		}
+		return snapshot.lookup.get(issuerOrId);
+	}
+
+	public Collection<OIDCIssuer> getIssuers() {
+		return snapshot.issuers;
+	}
+
+	/**
+	 * Picks the issuer from the <code>idp</code> request parameter, or the default issuer.
+	 */
+	@Override
+	public IssuerServiceResponse getIssuer(HttpServletRequest request) {
+		String requested = request.getParameter(ISSUER_PARAMETER);
+		OIDCIssuer issuer;
+		if (!Strings.isNullOrEmpty(requested)) {
+			issuer = getIssuer(requested);
+			if (issuer == null) {
+				log.warn("Login requested for unknown issuer {}", requested);
+				return null;
+			}
+		} else {
+			issuer = defaultIssuer();
+			if (issuer == null) {
+				return null;
+			}
+		}
+		return new IssuerServiceResponse(issuer.getIssuer(), request.getParameter("login_hint"), request.getParameter("target_link_uri"));
+	}
+
+	@Override
+	public ServerConfiguration getServerConfiguration(String issuer) {
+		OIDCIssuer entry = getIssuer(issuer);
+		return entry == null ? null : entry.getServerConfiguration();
+	}
+
+	@Override
+	public RegisteredClient getClientConfiguration(ServerConfiguration serverConfiguration) {
+		if (serverConfiguration == null) {
+			return null;
+		}
+		OIDCIssuer entry = getIssuer(serverConfiguration.getIssuer());
+		return entry == null ? null : entry.getClientConfiguration();
+	}
+
+	private OIDCIssuer defaultIssuer() {
+		if (defaultIssuerId != null) {
+			return snapshot.byId.get(defaultIssuerId);
+		}
+		return snapshot.issuers.size() == 1 ? snapshot.issuers.get(0) : null;
+	}
+
+	/**
+	 * Retry the issuers whose registration failed, and re-resolve the issuers that use discovery.
+	 */
+	void refreshDiscovery() {
+		// issuers registered by the retries below are fresh
+		List<OIDCIssuer> current = snapshot.issuers;
+		List<OIDCIssuerProperties> retries;
+		synchronized (writeLock) {
+			retries = new ArrayList<>(pending.values());
+		}
+		for (OIDCIssuerProperties properties : retries) {
+			try {
+				OIDCIssuer previous = snapshot.byId.get(properties.getId());
+				swap(resolve(properties, previous), previous, true);
+			} catch (RuntimeException e) {
+				log.warn("Unable to register OIDC issuer {}, retrying on the next refresh: {}", properties.getId(), e.toString());
+			}
+		}
+		for (OIDCIssuer issuer : current) {
+			if (!issuer.getProperties().isDiscovery()) {
+				continue;
+			}
+			try {
+				swap(resolve(issuer.getProperties(), issuer), issuer, false);
+			} catch (RuntimeException e) {
+				log.warn("Unable to refresh discovery document of {}, keeping the current configuration: {}", issuer.getId(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Replace the registration an issuer was resolved against, unless it has changed since (or, for a retry,
+	 * the issuer is no longer pending). Resolving fetches the discovery document, so it is done before and
+	 * only the swap holds the lock; a resolution that lost is released.
+	 *
+	 * @return true if the issuer has been registered
+	 */
+	private boolean swap(OIDCIssuer issuer, OIDCIssuer previous, boolean retry) {
+		String id = issuer.getId();
+		boolean swapped = false;
+		synchronized (writeLock) {
+			if (snapshot.byId.get(id) == previous && (!retry || pending.get(id) == issuer.getProperties())) {
+				List<OIDCIssuer> issuers = new ArrayList<>();
+				for (OIDCIssuer existing : snapshot.issuers) {
+					if (!existing.getId().equals(id)) {
+						issuers.add(existing);
+					}
+				}
+				issuers.add(issuer);
+				snapshot = new Snapshot(issuers);
+				pending.remove(id);
+				swapped = true;
+			}
+		}
+		if (!swapped) {
+			release(issuer, previous);
+			return false;
+		}
+		if (previous != null) {
+			release(previous, issuer);
+		}
+		log.info("Registered OIDC issuer {} ({})", issuer.getId(), issuer.getIssuer());
+		return true;
+	}
+
+	/**
+	 * Build the issuer from its properties, reusing the resources of the previous registration where possible.
+	 */
+	private OIDCIssuer resolve(OIDCIssuerProperties properties, OIDCIssuer previous) {
+		OIDCHttpClient httpClient = previous != null ? previous.getHttpClient() : resourceFactory.createHttpClient(properties.getId());
+		try {
+			JsonObject discovered = properties.isDiscovery() ? discover(properties, httpClient) : new JsonObject();
+
+			ServerConfiguration serverConfig = new ServerConfiguration();
+			serverConfig.setIssuer(firstNonEmpty(properties.getIssuer(), string(discovered, "issuer"), properties.getIssuerUri()));
+			serverConfig.setAuthorizationEndpointUri(firstNonEmpty(properties.getAuthorizationEndpointUri(), string(discovered, "authorization_endpoint")));
+			serverConfig.setTokenEndpointUri(firstNonEmpty(properties.getTokenEndpointUri(), string(discovered, "token_endpoint")));
+			serverConfig.setUserInfoUri(firstNonEmpty(properties.getUserInfoUri(), string(discovered, "userinfo_endpoint")));
+			serverConfig.setJwksUri(firstNonEmpty(properties.getJwksUri(), string(discovered, "jwks_uri")));
+			if (Strings.isNullOrEmpty(serverConfig.getIssuer())) {
+				throw new IllegalArgumentException("No issuer configured for " + properties.getId());
+			}
+
+			RegisteredClient clientConfig = new RegisteredClient();
+			clientConfig.setClientId(properties.getClientId());
+			clientConfig.setClientSecret(properties.getClientSecret());
+			clientConfig.setTokenEndpointAuthMethod(AuthMethod.SECRET_BASIC);
+			clientConfig.setScope(Collections.singleton("openid"));
+			if (properties.getRedirectUri() != null) {
+				Set<String> redirectUris = new HashSet<>();
+				redirectUris.add(properties.getRedirectUri());
+				clientConfig.setRedirectUris(redirectUris);
+			}
+
+			OIDCKeyStore keyStore;
+			if (previous != null && Objects.equal(previous.getServerConfiguration().getJwksUri(), serverConfig.getJwksUri())) {
+				keyStore = previous.getKeyStore();
+			} else {
+				keyStore = resourceFactory.createKeyStore(properties.getId(), serverConfig.getJwksUri(), httpClient);
+			}
+
+			ExternalAccountProvider provider = ExternalAccountProvider.register(properties.getId().toUpperCase());
+			return new OIDCIssuer(properties, serverConfig, clientConfig, provider, httpClient, keyStore);
+		} catch (RuntimeException e) {
+			if (previous == null) {
+				httpClient.shutdown();
+			}
+			throw e;
+		}
+	}
+
+	private JsonObject discover(OIDCIssuerProperties properties, OIDCHttpClient httpClient) {
+		String base = firstNonEmpty(properties.getIssuerUri(), properties.getIssuer());
+		if (Strings.isNullOrEmpty(base)) {
+			throw new IllegalArgumentException("Discovery needs an issuer URL for " + properties.getId());
+		}
+		if (base.endsWith("/")) {
+			base = base.substring(0, base.length() - 1);
+		}
+		String json = httpClient.getRestTemplate().getForObject(base + DISCOVERY_PATH, String.class);
+		JsonElement root = new JsonParser().parse(json);
+		if (!root.isJsonObject()) {
+			throw new IllegalStateException("Discovery document of " + properties.getId() + " is not a JSON object");
+		}
+		return root.getAsJsonObject();
+	}
+
+	/**
+	 * Release what a registration of an issuer holds and the other one (its replacement, or the registration
+	 * a discarded resolution was based on) does not share.
+	 */
+	private void release(OIDCIssuer released, OIDCIssuer other) {
+		if (released.getKeyStore() != null && (other == null || other.getKeyStore() != released.getKeyStore())) {
+			released.getKeyStore().destroy();
+		}
+		if (other == null || other.getHttpClient() != released.getHttpClient()) {
+			released.getHttpClient().shutdown();
+		}
+	}
+
+	private static String string(JsonObject json, String member) {
+		JsonElement element = json.get(member);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+	}
+
+	private static String firstNonEmpty(String... values) {
+		for (String value : values) {
+			if (!Strings.isNullOrEmpty(value)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param defaultIssuerId the issuer used when the login request does not name one
+	 */
+	public void setDefaultIssuerId(String defaultIssuerId) {
+		this.defaultIssuerId = defaultIssuerId;
+	}
+
+	public void setDiscoveryRefreshInterval(long discoveryRefreshInterval) {
+		this.discoveryRefreshInterval = discoveryRefreshInterval;
+	}
+
+	/**
+	 * Immutable view of the registered issuers, indexed by id, issuer URL and issuer URI alias.
+	 */
+	private static class Snapshot {
+
+		static final Snapshot EMPTY = new Snapshot(Collections.<OIDCIssuer>emptyList());
+
+		private final List<OIDCIssuer> issuers;
+		private final Map<String, OIDCIssuer> byId;
+		private final Map<String, OIDCIssuer> lookup;
+
+		Snapshot(List<OIDCIssuer> issuers) {
+			this.issuers = ImmutableList.copyOf(issuers);
+			Map<String, OIDCIssuer> ids = new LinkedHashMap<>();
+			Map<String, OIDCIssuer> all = new HashMap<>();
+			for (OIDCIssuer issuer : issuers) {
+				ids.put(issuer.getId(), issuer);
+				if (issuer.getProperties().getIssuerUri() != null) {
+					all.put(issuer.getProperties().getIssuerUri(), issuer);
+				}
+				all.put(issuer.getIssuer(), issuer);
+			}
+			// ids win over URLs
+			all.putAll(ids);
+			this.byId = ImmutableMap.copyOf(ids);
+			this.lookup = ImmutableMap.copyOf(all);
+		}
+	}
+}
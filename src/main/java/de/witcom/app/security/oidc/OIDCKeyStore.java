@@ -0,0 +1,266 @@
+package de.witcom.app.security.oidc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Signature verifiers for the keys published at the provider's JWKS endpoint.
+ * <p/>
+ * The key set is downloaded at startup and refreshed in the background, and verifiers are looked up by
+ * <code>kid</code> in an immutable map that is swapped atomically on refresh. When a token arrives with a
+ * <code>kid</code> we don't know (the provider rotated its keys) the set is refetched once, concurrent
+ * callers wait for that single download, and refetches are rate limited.
+ */
+public class OIDCKeyStore implements InitializingBean, DisposableBean {
+
+	private final Logger log = LoggerFactory.getLogger(OIDCKeyStore.class);
+
+	public static final long DEFAULT_REFRESH_INTERVAL = 3600;
+	public static final long DEFAULT_MIN_REFETCH_INTERVAL = 30;
+
+	private final String name;
+	private final String jwksUri;
+	private final OIDCHttpClient httpClient;
+
+	private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+	private long minRefetchInterval = DEFAULT_MIN_REFETCH_INTERVAL;
+
+	private MetricRegistry metricRegistry;
+	private Timer refreshTimer;
+	private Counter kidMissCounter;
+	private Counter refreshFailureCounter;
+
+	private volatile KeySnapshot keys = KeySnapshot.EMPTY;
+	private volatile long lastAttempt;
+	private final AtomicReference<FutureTask<KeySnapshot>> inFlight = new AtomicReference<FutureTask<KeySnapshot>>();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param name name of the store in metrics and thread names, the issuer id
+	 * @param jwksUri the provider's JWKS endpoint; the store is disabled when it is empty
+	 * @param httpClient pooled client used to download the key set
+	 */
+	public OIDCKeyStore(String name, String jwksUri, OIDCHttpClient httpClient) {
+		this.name = name;
+		this.jwksUri = jwksUri;
+		this.httpClient = httpClient;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (!isEnabled()) {
+			log.warn("No JWKS URI configured, id token signatures will not be validated");
+			return;
+		}
+
+		if (metricRegistry != null) {
+			refreshTimer = metricRegistry.timer(MetricRegistry.name(OIDCKeyStore.class, name, "refresh"));
+			kidMissCounter = metricRegistry.counter(MetricRegistry.name(OIDCKeyStore.class, name, "kid-miss"));
+			refreshFailureCounter = metricRegistry.counter(MetricRegistry.name(OIDCKeyStore.class, name, "refresh-failures"));
+		}
+
+		// warm up, so the first login does not pay for the download
+		refresh();
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "oidc-jwks-refresh-" + name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				refresh();
+			}
+		}, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	public boolean isEnabled() {
+		return !Strings.isNullOrEmpty(jwksUri);
+	}
+
+	/**
+	 * Verify the signature of the token with the key named in its header.
+	 *
+	 * @return false if the signature does not match or no key for the token is known
+	 */
+	public boolean verify(SignedJWT jwt) throws JOSEException {
+		String kid = jwt.getHeader().getKeyID();
+
+		JWSVerifier verifier = keys.lookup(kid);
+		if (verifier == null) {
+			if (kidMissCounter != null) {
+				kidMissCounter.inc();
+			}
+			log.info("No key found for kid {}, refetching key set", kid);
+			verifier = refetch().lookup(kid);
+		}
+		if (verifier == null) {
+			log.warn("No key found for kid {} at {}", kid, jwksUri);
+			return false;
+		}
+		return jwt.verify(verifier);
+	}
+
+	/**
+	 * Refetch the key set after a miss, unless a download was attempted very recently. Failed attempts count
+	 * too, so an unreachable endpoint is not hit by every token with an unknown kid.
+	 */
+	private KeySnapshot refetch() {
+		if (System.currentTimeMillis() - lastAttempt < TimeUnit.SECONDS.toMillis(minRefetchInterval)) {
+			return keys;
+		}
+		return refresh();
+	}
+
+	/**
+	 * Download the key set, or wait for the download already in progress.
+	 *
+	 * @return the current keys; the previous keys are kept if the download fails
+	 */
+	KeySnapshot refresh() {
+		FutureTask<KeySnapshot> task = new FutureTask<KeySnapshot>(new Callable<KeySnapshot>() {
+
+			@Override
+			public KeySnapshot call() throws Exception {
+				return load();
+			}
+		});
+
+		FutureTask<KeySnapshot> running;
+		if (inFlight.compareAndSet(null, task)) {
+			running = task;
+			lastAttempt = System.currentTimeMillis();
+			try {
+				task.run();
+			} finally {
+				inFlight.compareAndSet(task, null);
+			}
+		} else {
+			running = inFlight.get();
+			if (running == null) {
+				// finished between our two reads
+				return keys;
+			}
+		}
+
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return keys;
+		} catch (ExecutionException e) {
+			if (refreshFailureCounter != null) {
+				refreshFailureCounter.inc();
+			}
+			log.warn("Unable to refresh key set from {}: {}", jwksUri, e.getCause().toString());
+			return keys;
+		}
+	}
+
+	private KeySnapshot load() throws Exception {
+		Timer.Context context = refreshTimer != null ? refreshTimer.time() : null;
+		try {
+			String json = httpClient.getRestTemplate().getForObject(jwksUri, String.class);
+			JWKSet jwkSet = JWKSet.parse(json);
+
+			Map<String, JWSVerifier> verifiers = new HashMap<>();
+			JWSVerifier single = null;
+			for (JWK jwk : jwkSet.getKeys()) {
+				if (!(jwk instanceof RSAKey)) {
+					log.debug("Ignoring unsupported key {} of type {}", jwk.getKeyID(), jwk.getKeyType());
+					continue;
+				}
+				JWSVerifier verifier = new RSASSAVerifier(((RSAKey) jwk).toRSAPublicKey());
+				single = verifier;
+				if (jwk.getKeyID() != null) {
+					verifiers.put(jwk.getKeyID(), verifier);
+				}
+			}
+
+			KeySnapshot snapshot = new KeySnapshot(verifiers, jwkSet.getKeys().size() == 1 ? single : null);
+			keys = snapshot;
+			log.debug("Loaded {} keys from {}", verifiers.size(), jwksUri);
+			return snapshot;
+		} finally {
+			if (context != null) {
+				context.stop();
+			}
+		}
+	}
+
+	public void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	public void setMinRefetchInterval(long minRefetchInterval) {
+		this.minRefetchInterval = minRefetchInterval;
+	}
+
+	public void setMetricRegistry(MetricRegistry metricRegistry) {
+		this.metricRegistry = metricRegistry;
+	}
+
+	/**
+	 * Immutable kid index; a key set with a single key also serves tokens without a kid.
+	 */
+	static class KeySnapshot {
+
+		static final KeySnapshot EMPTY = new KeySnapshot(Collections.<String, JWSVerifier>emptyMap(), null);
+
+		private final Map<String, JWSVerifier> byKid;
+		private final JWSVerifier single;
+
+		KeySnapshot(Map<String, JWSVerifier> byKid, JWSVerifier single) {
+			this.byKid = ImmutableMap.copyOf(byKid);
+			this.single = single;
+		}
+
+		JWSVerifier lookup(String kid) {
+			if (kid == null) {
+				return single;
+			}
+			return byKid.get(kid);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package de.witcom.app.security.oidc;
+
+import java.io.Serializable;
+
+/**
+ * What the filter has to remember between the authorization request and the callback of one login.
+ */
+public class OIDCLoginState implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String state;
+	private final String nonce;
+	private final String issuer;
+	private final String redirectUri;
+	private final String target;
+	private final long createdAt;
+
+	public OIDCLoginState(String state, String nonce, String issuer, String redirectUri, String target) {
+		this(state, nonce, issuer, redirectUri, target, System.currentTimeMillis());
+	}
+
+	public OIDCLoginState(String state, String nonce, String issuer, String redirectUri, String target, long createdAt) {
+		this.state = state;
+		this.nonce = nonce;
+		this.issuer = issuer;
+		this.redirectUri = redirectUri;
+		this.target = target;
+		this.createdAt = createdAt;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public String getNonce() {
+		return nonce;
+	}
+
+	public String getIssuer() {
+		return issuer;
+	}
+
+	public String getRedirectUri() {
+		return redirectUri;
+	}
+
+	/**
+	 * @return the deep link to send the user to after login, may be null
+	 */
+	public String getTarget() {
+		return target;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return "OIDCLoginState{issuer='" + issuer + "', redirectUri='" + redirectUri + "', target='" + target + "'}";
+	}
+}
@@ -0,0 +1,24 @@
+package de.witcom.app.security.oidc;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Keeps the {@link OIDCLoginState} of a login between the authorization request and the callback.
+ */
+public interface OIDCLoginStateStore {
+
+	/**
+	 * Remember the state of a login that is about to be sent to the authorization endpoint.
+	 */
+	void save(OIDCLoginState loginState, HttpServletRequest request, HttpServletResponse response);
+
+	/**
+	 * Look up and forget the state of the login the callback belongs to.
+	 *
+	 * @param state
+	 *            the state parameter of the callback, may be null
+	 * @return the login state, or null if there is none (or it has expired)
+	 */
+	OIDCLoginState load(String state, HttpServletRequest request, HttpServletResponse response);
+}
@@ -0,0 +1,92 @@
+package de.witcom.app.security.oidc;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Date;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.mitre.openid.connect.model.UserInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.nimbusds.jwt.JWTParser;
+
+/**
+ * Short lived cache of userinfo responses, keyed by issuer, subject and a hash of the access token.
+ * <p/>
+ * Entries never outlive the id token they were fetched with: the per-entry TTL is the time left until
+ * the token's <code>exp</code>, capped by the TTL of the backing cache region. Size-based eviction,
+ * hit/miss statistics and metrics come from the Ehcache region itself (see ehcache.xml).
+ */
+public class OIDCUserInfoCache {
+
+	public static final String CACHE_NAME = "oidc.userinfo";
+
+	private final Logger log = LoggerFactory.getLogger(OIDCUserInfoCache.class);
+
+	private final Ehcache cache;
+
+	public OIDCUserInfoCache(Ehcache cache) {
+		this.cache = cache;
+	}
+
+	public UserInfo get(OIDCAuthToken token) {
+		String key = cacheKey(token);
+		if (key == null) {
+			return null;
+		}
+		Element element = cache.get(key);
+		if (element == null) {
+			return null;
+		}
+		log.debug("Userinfo for {} served from cache", token.getSub());
+		return (UserInfo) element.getObjectValue();
+	}
+
+	public void put(OIDCAuthToken token, UserInfo userInfo) {
+		String key = cacheKey(token);
+		if (key == null || userInfo == null) {
+			return;
+		}
+		long ttl = timeToLive(token);
+		if (ttl <= 0) {
+			return;
+		}
+		Element element = new Element(key, userInfo);
+		element.setTimeToLive((int) ttl);
+		cache.put(element);
+	}
+
+	/**
+	 * Seconds until the id token expires, capped by the region TTL. Returns 0 when the entry must not be cached.
+	 */
+	private long timeToLive(OIDCAuthToken token) {
+		long maxTtl = cache.getCacheConfiguration().getTimeToLiveSeconds();
+		if (Strings.isNullOrEmpty(token.getIdTokenValue())) {
+			return 0;
+		}
+		try {
+			Date exp = JWTParser.parse(token.getIdTokenValue()).getJWTClaimsSet().getExpirationTime();
+			if (exp == null) {
+				return 0;
+			}
+			long remaining = (exp.getTime() - System.currentTimeMillis()) / 1000;
+			return maxTtl > 0 ? Math.min(remaining, maxTtl) : remaining;
+		} catch (ParseException e) {
+			log.debug("Unable to read expiry from id token, not caching userinfo", e);
+			return 0;
+		}
+	}
+
+	private String cacheKey(OIDCAuthToken token) {
+		if (Strings.isNullOrEmpty(token.getAccessTokenValue())) {
+			return null;
+		}
+		String accessTokenHash = Hashing.sha256().hashString(token.getAccessTokenValue(), StandardCharsets.UTF_8).toString();
+		return token.getIssuer() + "|" + token.getSub() + "|" + accessTokenHash;
+	}
+}
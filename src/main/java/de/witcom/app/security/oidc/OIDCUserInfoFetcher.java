@@ -1,11 +1,6 @@
 package de.witcom.app.security.oidc;
 
-import java.io.IOException;
-import java.net.URI;
-
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.SystemDefaultHttpClient;
 import org.mitre.openid.connect.client.UserInfoFetcher;
 import org.mitre.openid.connect.config.ServerConfiguration;
 import org.mitre.openid.connect.config.ServerConfiguration.UserInfoTokenMethod;
@@ -14,9 +9,9 @@ import org.mitre.openid.connect.model.OIDCAuthenticationToken;
 import org.mitre.openid.connect.model.UserInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.client.ClientHttpRequest;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
@@ -29,6 +24,32 @@ public class OIDCUserInfoFetcher {
 
 	private Logger logger = LoggerFactory.getLogger(UserInfoFetcher.class);
 
+	private OIDCHttpClient httpClient;
+
+	private OIDCUserInfoCache userInfoCache;
+
+	// issuers with their own HTTP client
+	private OIDCIssuerRegistry issuerRegistry;
+
+	public OIDCUserInfoFetcher() {
+	}
+
+	/**
+	 * @param httpClient pooled client used to reach the userinfo endpoint
+	 */
+	public OIDCUserInfoFetcher(OIDCHttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	private synchronized OIDCHttpClient getHttpClient() {
+		if (httpClient == null) {
+			// no shared pool wired in, fall back to a private one
+			httpClient = new OIDCHttpClient("userinfo");
+			httpClient.afterPropertiesSet();
+		}
+		return httpClient;
+	}
+
 	public UserInfo loadUserInfo(final OIDCAuthToken token) {
 
 		ServerConfiguration serverConfiguration = token.getServerConfiguration();
@@ -43,39 +64,37 @@ public class OIDCUserInfoFetcher {
 			return null;
 		}
 
+		if (userInfoCache != null) {
+			UserInfo cached = userInfoCache.get(token);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
 		try {
 		
 			// if we got this far, try to actually get the userinfo
-			HttpClient httpClient = new SystemDefaultHttpClient();
-			
-			HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+			OIDCIssuer issuer = issuerRegistry != null ? issuerRegistry.getIssuer(serverConfiguration.getIssuer()) : null;
+			RestTemplate restTemplate = (issuer != null ? issuer.getHttpClient() : getHttpClient()).getRestTemplate();
 			
 			String userInfoString = null;
 			
 			if (serverConfiguration.getUserInfoTokenMethod() == null || serverConfiguration.getUserInfoTokenMethod().equals(UserInfoTokenMethod.HEADER)) {
-				RestTemplate restTemplate = new RestTemplate(factory) {
-					
-					@Override
-					protected ClientHttpRequest createRequest(URI url, HttpMethod method) throws IOException {
-						ClientHttpRequest httpRequest = super.createRequest(url, method);
-						httpRequest.getHeaders().add("Authorization", String.format("Bearer %s", token.getAccessTokenValue()));
-						return httpRequest;
-					}
-				};
+				HttpHeaders headers = new HttpHeaders();
+				headers.add("Authorization", String.format("Bearer %s", token.getAccessTokenValue()));
 				
-				userInfoString = restTemplate.getForObject(serverConfiguration.getUserInfoUri(), String.class);
+				userInfoString = restTemplate.exchange(serverConfiguration.getUserInfoUri(), HttpMethod.GET,
+						new HttpEntity<Void>(headers), String.class).getBody();
 				
 			} else if (serverConfiguration.getUserInfoTokenMethod().equals(UserInfoTokenMethod.FORM)) {
 				MultiValueMap<String, String> form = new LinkedMultiValueMap<String, String>();
 				form.add("access_token", token.getAccessTokenValue());
 				
-				RestTemplate restTemplate = new RestTemplate(factory);
 				userInfoString = restTemplate.postForObject(serverConfiguration.getUserInfoUri(), form, String.class);
 			} else if (serverConfiguration.getUserInfoTokenMethod().equals(UserInfoTokenMethod.QUERY)) {
 				URIBuilder builder = new URIBuilder(serverConfiguration.getUserInfoUri());
 				builder.setParameter("access_token",  token.getAccessTokenValue());
 				
-				RestTemplate restTemplate = new RestTemplate(factory);
 				userInfoString = restTemplate.getForObject(builder.toString(), String.class);
 			}
 
@@ -88,6 +107,10 @@ public class OIDCUserInfoFetcher {
 	
 				UserInfo userInfo = DefaultUserInfo.fromJson(userInfoJson);
 
+				if (userInfoCache != null) {
+					userInfoCache.put(token, userInfo);
+				}
+
 				return userInfo;
 			} else {
 				// didn't get anything, return null
@@ -100,6 +123,12 @@ public class OIDCUserInfoFetcher {
 
 	}
 
-}
+	public void setUserInfoCache(OIDCUserInfoCache userInfoCache) {
+		this.userInfoCache = userInfoCache;
+	}
 
+	public void setIssuerRegistry(OIDCIssuerRegistry issuerRegistry) {
+		this.issuerRegistry = issuerRegistry;
+	}
 
+}
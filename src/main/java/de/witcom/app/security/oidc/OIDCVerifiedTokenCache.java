@@ -0,0 +1,62 @@
+package de.witcom.app.security.oidc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import com.google.common.hash.Hashing;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
+
+/**
+ * Claims of id tokens whose signature has already been verified, keyed by a SHA-256 digest of the
+ * compact serialization.
+ * <p/>
+ * A token presented again (retry, double submit, back button) skips parsing and signature verification;
+ * the claims checks still run on the cached claims. Entries expire with the token's <code>exp</code>,
+ * capped by the TTL of the backing cache region.
+ */
+public class OIDCVerifiedTokenCache {
+
+	public static final String CACHE_NAME = "oidc.idtoken";
+
+	private final Ehcache cache;
+
+	public OIDCVerifiedTokenCache(Ehcache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the verified claims, or null if this token has not been verified yet
+	 */
+	public ReadOnlyJWTClaimsSet get(String idTokenValue) {
+		Element element = cache.get(digest(idTokenValue));
+		if (element == null) {
+			return null;
+		}
+		return (ReadOnlyJWTClaimsSet) element.getObjectValue();
+	}
+
+	public void put(String idTokenValue, ReadOnlyJWTClaimsSet claims) {
+		Date exp = claims.getExpirationTime();
+		if (exp == null) {
+			return;
+		}
+		long ttl = (exp.getTime() - System.currentTimeMillis()) / 1000;
+		long maxTtl = cache.getCacheConfiguration().getTimeToLiveSeconds();
+		if (maxTtl > 0) {
+			ttl = Math.min(ttl, maxTtl);
+		}
+		if (ttl <= 0) {
+			return;
+		}
+		Element element = new Element(digest(idTokenValue), claims);
+		element.setTimeToLive((int) ttl);
+		cache.put(element);
+	}
+
+	private static String digest(String idTokenValue) {
+		return Hashing.sha256().hashString(idTokenValue, StandardCharsets.UTF_8).toString();
+	}
+}
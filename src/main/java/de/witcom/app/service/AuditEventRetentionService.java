@@ -0,0 +1,209 @@
+package de.witcom.app.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import de.witcom.app.domain.PersistentAuditEvent;
+import de.witcom.app.domain.util.JSONStringMapConverter;
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deletes audit events older than <code>jhipster.audit.retention.months</code>, one monthly bucket at a time.
+ * <p/>
+ * When <code>jhipster.audit.retention.archiveDirectory</code> is set, each bucket is first exported to
+ * <code>audit-yyyyMM.json.gz</code> in that directory, one JSON object per line, and only deleted once the
+ * file is complete. Buckets whose export or deletion fails are kept and retried the next night. Events
+ * without a date are never removed, see {@link PersistentAuditEvent#UNDATED_BUCKET}.
+ */
+@Service
+public class AuditEventRetentionService {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventRetentionService.class);
+
+    public static final int DEFAULT_RETENTION_MONTHS = 12;
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+
+    private static final String EXPORT_SQL = "select event_id, principal, event_date, event_type, event_data " +
+        "from T_PERSISTENT_AUDIT_EVENT where event_bucket = ? and event_id > ? order by event_id";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final JdbcTemplate exportTemplate;
+
+    private final int retentionMonths;
+
+    private final File archiveDirectory;
+
+    @Inject
+    private JobLeaseService jobLeaseService;
+
+    @Inject
+    private BulkDeleteService bulkDeleteService;
+
+    @Inject
+    public AuditEventRetentionService(Environment env, DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.exportTemplate = new JdbcTemplate(dataSource);
+        this.exportTemplate.setMaxRows(EXPORT_PAGE_SIZE);
+        this.retentionMonths = env.getProperty("jhipster.audit.retention.months", Integer.class, DEFAULT_RETENTION_MONTHS);
+        String directory = env.getProperty("jhipster.audit.retention.archiveDirectory");
+        this.archiveDirectory = StringUtils.hasText(directory) ? new File(directory) : null;
+    }
+
+    /**
+     * Audit events older than the retention period are removed, and archived if configured.
+     * <p/>
+     * <p>
+     * This is scheduled to get fired everyday, at 02:00 (am), on the node that leases it.
+     * </p>
+     */
+    @Scheduled(cron = "0 0 2 * * ?")
+    public void removeOldAuditEvents() {
+        jobLeaseService.runExclusively("removeOldAuditEvents", new Runnable() {
+            @Override
+            public void run() {
+                removeBucketsBefore(PersistentAuditEvent.bucketOf(new LocalDateTime().minusMonths(retentionMonths)));
+            }
+        });
+    }
+
+    /**
+     * Removes the dated buckets before the given one.
+     *
+     * @return the number of events deleted
+     */
+    public long removeBucketsBefore(int bucket) {
+        List<Integer> buckets = jdbcTemplate.queryForList(
+            "select distinct event_bucket from T_PERSISTENT_AUDIT_EVENT where event_bucket > ? and event_bucket < ? " +
+                "order by event_bucket",
+            Integer.class, PersistentAuditEvent.UNDATED_BUCKET, bucket);
+        long deleted = 0;
+        for (Integer expired : buckets) {
+            try {
+                if (archiveDirectory != null) {
+                    archive(expired);
+                }
+                deleted += bulkDeleteService.deleteInChunks("auditEvents",
+                    "select event_id from T_PERSISTENT_AUDIT_EVENT where event_bucket = ?", new Object[]{expired}, null,
+                    "delete from T_PERSISTENT_AUDIT_EVENT_DATA where event_id in (:keys)",
+                    "delete from T_PERSISTENT_AUDIT_EVENT where event_id in (:keys)");
+            } catch (IOException | DataAccessException e) {
+                log.error("Failed to remove audit events of {}, keeping them: ", expired, e);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Exports the bucket page by page to a temporary file, renamed once complete and deleted if the export fails.
+     *
+     * @return the archive file
+     */
+    public File archive(int bucket) throws IOException {
+        if (!archiveDirectory.isDirectory() && !archiveDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + archiveDirectory);
+        }
+        File archive = new File(archiveDirectory, "audit-" + bucket + ".json.gz");
+        File partial = new File(archiveDirectory, archive.getName() + ".part");
+        long exported = 0;
+        boolean complete = false;
+        try {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(partial));
+                 JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                ExportHandler handler = new ExportHandler(generator);
+                int count;
+                do {
+                    count = handler.count;
+                    exportTemplate.query(EXPORT_SQL, handler, bucket, handler.lastId);
+                    if (handler.failure != null) {
+                        throw handler.failure;
+                    }
+                    count = handler.count - count;
+                    exported += count;
+                } while (count == EXPORT_PAGE_SIZE);
+                generator.writeRaw('\n');
+            }
+            if (archive.exists() && !archive.delete() || !partial.renameTo(archive)) {
+                throw new IOException("Unable to rename " + partial + " to " + archive);
+            }
+            complete = true;
+        } finally {
+            if (!complete && partial.exists() && !partial.delete()) {
+                log.warn("Unable to delete {}", partial);
+            }
+        }
+        log.info("Archived {} audit events of {} to {}", exported, bucket, archive);
+        return archive;
+    }
+
+    private static class ExportHandler implements RowCallbackHandler {
+
+        private final JsonGenerator generator;
+
+        private long lastId;
+
+        private int count;
+
+        private IOException failure;
+
+        ExportHandler(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (failure != null) {
+                return;
+            }
+            lastId = rs.getLong("event_id");
+            count++;
+            try {
+                generator.writeStartObject();
+                generator.writeNumberField("id", lastId);
+                generator.writeStringField("principal", rs.getString("principal"));
+                Timestamp date = rs.getTimestamp("event_date");
+                if (date != null) {
+                    generator.writeNumberField("timestamp", date.getTime());
+                } else {
+                    generator.writeNullField("timestamp");
+                }
+                generator.writeStringField("type", rs.getString("event_type"));
+                generator.writeObjectFieldStart("data");
+                for (Map.Entry<String, String> entry : JSONStringMapConverter.fromJson(rs.getString("event_data")).entrySet()) {
+                    generator.writeStringField(entry.getKey(), entry.getValue());
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
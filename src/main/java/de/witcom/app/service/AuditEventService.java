@@ -1,8 +1,6 @@
 package de.witcom.app.service;
 
-import de.witcom.app.config.audit.AuditEventConverter;
-import de.witcom.app.domain.PersistentAuditEvent;
-import de.witcom.app.repository.PersistenceAuditEventRepository;
+import de.witcom.app.repository.AuditEventReader;
 import org.joda.time.LocalDateTime;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.stereotype.Service;
@@ -19,23 +17,23 @@ import java.util.List;
  * </p>
  */
 @Service
-@Transactional
+@Transactional(readOnly = true)
 public class AuditEventService {
 
     @Inject
-    private PersistenceAuditEventRepository persistenceAuditEventRepository;
-
-    @Inject
-    private AuditEventConverter auditEventConverter;
+    private AuditEventReader auditEventReader;
 
     public List<AuditEvent> findAll() {
-        return auditEventConverter.convertToAuditEvent(persistenceAuditEventRepository.findAll());
+        return auditEventReader.findAll();
     }
 
     public List<AuditEvent> findByDates(LocalDateTime fromDate, LocalDateTime toDate) {
-        List<PersistentAuditEvent> persistentAuditEvents =
-            persistenceAuditEventRepository.findAllByAuditEventDateBetween(fromDate, toDate);
+        return auditEventReader.findByDatesBetween(fromDate.toDate(), toDate.toDate());
+    }
 
-        return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
+    public AuditEventReader.Page findPage(String principal, LocalDateTime fromDate, LocalDateTime toDate,
+                                          AuditEventReader.Cursor after, int size) {
+        return auditEventReader.findPage(principal, fromDate == null ? null : fromDate.toDate(),
+            toDate == null ? null : toDate.toDate(), after, size);
     }
 }
@@ -0,0 +1,168 @@
+package de.witcom.app.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import de.witcom.app.config.cache.ClusterCacheInvalidator;
+import de.witcom.app.config.cache.Invalidation;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Deletes large sets of rows in bounded chunks, with set-based SQL and one transaction per chunk, so
+ * purges neither load entities nor hold locks for long.
+ * <p/>
+ * Each chunk selects at most <code>jhipster.purge.chunkSize</code> keys, runs the delete statements
+ * with these keys (dependent tables first) and evicts the deleted rows from the second level cache.
+ * When called inside a transaction the chunks join it. Per job, the rows deleted in the current run
+ * (<code>progress</code>), the deletion rate (<code>rows</code>) and the chunk durations are published
+ * as metrics when a metric registry is available.
+ */
+@Service
+public class BulkDeleteService {
+
+    private final Logger log = LoggerFactory.getLogger(BulkDeleteService.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Names the cache entries of the rows of a chunk, evicted from the second level cache of every node
+     * after the chunk has been committed.
+     */
+    public interface CacheEviction {
+
+        List<Invalidation> evictions(List<Object> keys);
+    }
+
+    private final JdbcTemplate keyTemplate;
+
+    private final NamedParameterJdbcTemplate deleteTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Autowired(required = false)
+    private ClusterCacheInvalidator invalidator;
+
+    private final ConcurrentMap<String, AtomicLong> progress = new ConcurrentHashMap<>();
+
+    @Inject
+    public BulkDeleteService(Environment env, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.chunkSize = env.getProperty("jhipster.purge.chunkSize", Integer.class, DEFAULT_CHUNK_SIZE);
+        this.keyTemplate = new JdbcTemplate(dataSource);
+        this.keyTemplate.setMaxRows(chunkSize);
+        this.deleteTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param job           name of the job, used in logs and metric names
+     * @param selectKeysSql selects the keys of the rows to delete, takes <code>selectArgs</code>
+     * @param deleteSqls    delete statements, executed in order with the keys bound to <code>:keys</code>
+     * @return the number of keys deleted
+     */
+    public long deleteInChunks(String job, final String selectKeysSql, final Object[] selectArgs,
+                               final CacheEviction eviction, final String... deleteSqls) {
+        AtomicLong deleted = progress(job);
+        deleted.set(0);
+        Meter rows = metricRegistry != null ? metricRegistry.meter(name(BulkDeleteService.class, job, "rows")) : null;
+        Timer chunks = metricRegistry != null ? metricRegistry.timer(name(BulkDeleteService.class, job, "chunk")) : null;
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+
+        while (true) {
+            Timer.Context time = chunks != null ? chunks.time() : null;
+            List<Object> keys;
+            try {
+                keys = transactionTemplate.execute(new TransactionCallback<List<Object>>() {
+                    @Override
+                    public List<Object> doInTransaction(TransactionStatus status) {
+                        List<Object> keys = keyTemplate.queryForList(selectKeysSql, Object.class, selectArgs);
+                        if (!keys.isEmpty()) {
+                            MapSqlParameterSource parameters = new MapSqlParameterSource("keys", keys);
+                            for (String deleteSql : deleteSqls) {
+                                deleteTemplate.update(deleteSql, parameters);
+                            }
+                        }
+                        return keys;
+                    }
+                });
+            } finally {
+                if (time != null) {
+                    time.stop();
+                }
+            }
+            if (keys.isEmpty()) {
+                break;
+            }
+            if (eviction != null) {
+                for (Invalidation invalidation : eviction.evictions(keys)) {
+                    ClusterCacheInvalidator.evict(cache, invalidation);
+                    if (invalidator != null) {
+                        invalidator.invalidate(invalidation);
+                    }
+                }
+            }
+            if (rows != null) {
+                rows.mark(keys.size());
+            }
+            log.debug("Purge {}: {} rows deleted so far", job, deleted.addAndGet(keys.size()));
+            if (keys.size() < chunkSize) {
+                break;
+            }
+        }
+        log.info("Purge {} finished, {} rows deleted", job, deleted.get());
+        return deleted.get();
+    }
+
+    private AtomicLong progress(String job) {
+        AtomicLong counter = progress.get(job);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = progress.putIfAbsent(job, created);
+            if (counter == null) {
+                counter = created;
+                if (metricRegistry != null) {
+                    final AtomicLong value = created;
+                    metricRegistry.register(name(BulkDeleteService.class, job, "progress"), new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return value.get();
+                        }
+                    });
+                }
+            }
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,149 @@
+package de.witcom.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs scheduled jobs on a single node of the cluster, using leases stored in T_JOB_LEASE.
+ * <p/>
+ * Every node triggers the jobs, but only the node that acquires the lease of a job runs it. A lease is
+ * kept after the job has completed, until it expires, so that nodes triggering late skip the job; it is
+ * released when the job fails, so another node may retry. The lease time must therefore be longer than
+ * the job and the clock skew between nodes, and shorter than the schedule interval.
+ * <p/>
+ * Partitioned jobs have one lease per partition: each node walks the partitions and runs the ones it
+ * acquires, so the partitions of a large job are spread over the nodes that trigger it at the same time.
+ * <p/>
+ * Lease statements join the current transaction if there is one, and are committed right away otherwise.
+ */
+@Service
+public class JobLeaseService {
+
+    private final Logger log = LoggerFactory.getLogger(JobLeaseService.class);
+
+    public static final int DEFAULT_PARTITIONS = 4;
+
+    public static final long DEFAULT_LEASE_TIME = 3600;
+
+    /**
+     * A partition of a job, selecting the keys for which <code>mod(key, partitions) = partition</code>.
+     */
+    public interface PartitionTask {
+
+        void run(int partition, int partitions);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String owner;
+
+    private final long leaseTime;
+
+    private final int partitions;
+
+    @Inject
+    public JobLeaseService(Environment env, DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.leaseTime = TimeUnit.SECONDS.toMillis(
+            env.getProperty("jhipster.scheduling.leaseTime", Long.class, DEFAULT_LEASE_TIME));
+        this.partitions = env.getProperty("jhipster.scheduling.partitions", Integer.class, DEFAULT_PARTITIONS);
+        this.owner = nodeName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * @return true if this node now holds the lease
+     */
+    public boolean tryAcquire(String leaseName) {
+        long now = System.currentTimeMillis();
+        Timestamp acquiredAt = new Timestamp(now);
+        Timestamp expiresAt = new Timestamp(now + leaseTime);
+        int updated = jdbcTemplate.update(
+            "update T_JOB_LEASE set owner = ?, acquired_at = ?, expires_at = ? where lease_name = ? and expires_at < ?",
+            owner, acquiredAt, expiresAt, leaseName, acquiredAt);
+        if (updated == 1) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update("insert into T_JOB_LEASE (lease_name, owner, acquired_at, expires_at) values (?, ?, ?, ?)",
+                leaseName, owner, acquiredAt, expiresAt);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // held by another node
+            return false;
+        }
+    }
+
+    /**
+     * Gives a lease up before it expires, if this node holds it.
+     */
+    public void release(String leaseName) {
+        jdbcTemplate.update("update T_JOB_LEASE set expires_at = ? where lease_name = ? and owner = ?",
+            new Timestamp(System.currentTimeMillis()), leaseName, owner);
+    }
+
+    /**
+     * Runs the job if this node acquires its lease.
+     *
+     * @return true if the job has been run by this node
+     */
+    public boolean runExclusively(String job, Runnable task) {
+        if (!tryAcquire(job)) {
+            log.debug("Job {} is run by another node", job);
+            return false;
+        }
+        log.debug("Running job {} on {}", job, owner);
+        try {
+            task.run();
+            return true;
+        } catch (RuntimeException e) {
+            release(job);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the partitions of the job whose leases this node acquires.
+     *
+     * @return the number of partitions run by this node
+     */
+    public int runPartitioned(String job, final PartitionTask task) {
+        int run = 0;
+        for (int i = 0; i < partitions; i++) {
+            final int partition = i;
+            if (runExclusively(job + "." + partition + "/" + partitions, new Runnable() {
+                @Override
+                public void run() {
+                    task.run(partition, partitions);
+                }
+            })) {
+                run++;
+            }
+        }
+        log.debug("Ran {} of {} partitions of job {}", run, partitions, job);
+        return run;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
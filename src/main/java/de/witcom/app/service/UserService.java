@@ -1,26 +1,45 @@
 package de.witcom.app.service;
 
+import de.witcom.app.config.cache.Invalidation;
 import de.witcom.app.domain.Authority;
 import de.witcom.app.domain.PersistentToken;
 import de.witcom.app.domain.User;
 import de.witcom.app.domain.ExternalAccount;
 
 import de.witcom.app.repository.AuthorityRepository;
-import de.witcom.app.repository.PersistentTokenRepository;
+import de.witcom.app.repository.KeysetPager;
 import de.witcom.app.repository.UserRepository;
+import de.witcom.app.security.AuthoritiesConstants;
 import de.witcom.app.security.SecurityUtils;
 import de.witcom.app.service.util.RandomUtil;
+import de.witcom.app.web.rest.dto.UserDTO;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.inject.Inject;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.io.Serializable;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -32,6 +51,11 @@ import java.util.Set;
 @Transactional
 public class UserService {
 
+    /**
+     * Properties of the user list, in the order of the UserDTO projection constructor.
+     */
+    private static final List<String> USER_DTO_PROPERTIES = Arrays.asList("login", "firstName", "lastName", "email", "langKey");
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     @Inject
@@ -41,10 +65,19 @@ public class UserService {
     private UserRepository userRepository;
 
     @Inject
-    private PersistentTokenRepository persistentTokenRepository;
+    private AuthorityRepository authorityRepository;
+
+    @Inject
+    private UserCache userCache;
 
     @Inject
-    private AuthorityRepository authorityRepository;
+    private BulkDeleteService bulkDeleteService;
+
+    @Inject
+    private JobLeaseService jobLeaseService;
+
+    @Inject
+    private KeysetPager keysetPager;
 
     public  User activateRegistration(String key) {
         log.debug("Activating user for activation key {}", key);
@@ -54,6 +87,7 @@ public class UserService {
             user.setActivated(true);
             user.setActivationKey(null);
             userRepository.save(user);
+            userCache.removeUserFromCache(user.getLogin());
             log.debug("Activated user: {}", user);
         }
         return user;
@@ -62,7 +96,8 @@ public class UserService {
     public User createUserInformation(String login, String password, String firstName, String lastName, String email,
                                       String langKey,ExternalAccount externalAccount) {
         User newUser = new User();
-        Authority authority = authorityRepository.findOne("ROLE_USER");
+        // a reference is all the join table needs, it is not loaded
+        Authority authority = authorityRepository.getOne(AuthoritiesConstants.USER);
         Set<Authority> authorities = new HashSet<>();
         //String encryptedPassword = passwordEncoder.encode(password);
         newUser.setLogin(login);
@@ -131,9 +166,53 @@ public class UserService {
         String encryptedPassword = passwordEncoder.encode(password);
         currentUser.setPassword(encryptedPassword);
         userRepository.save(currentUser);
+        userCache.removeUserFromCache(currentUser.getLogin());
         log.debug("Changed password for User: {}", currentUser);
     }
 
+    /**
+     * A page of users whose login or email contains the filter. The total comes from a count cached for a
+     * minute, so it may lag behind recent registrations.
+     */
+    @Transactional(readOnly = true)
+    public Page<UserDTO> getUsers(String filter, Pageable pageable) {
+        String pattern = likePattern(filter);
+        List<UserDTO> users = userRepository.findAllAsDTOByFilter(pattern, pageable);
+        return new PageImpl<>(users, pageable, userRepository.countByFilter(pattern));
+    }
+
+    /**
+     * Users whose login or email contains the filter, following the given login in login order. Unlike pages,
+     * deep positions cost no more than the first one.
+     *
+     * @param afterLogin null for the first users
+     */
+    @Transactional(readOnly = true)
+    public List<UserDTO> getUsersAfter(String filter, String afterLogin, int limit) {
+        final String pattern = likePattern(filter);
+        Specification<User> matching = new Specification<User>() {
+            @Override
+            public Predicate toPredicate(Root<User> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+                return cb.or(cb.like(cb.lower(root.<String>get("login")), pattern),
+                    cb.like(cb.lower(root.<String>get("email")), pattern));
+            }
+        };
+        return keysetPager.findPage(User.class, UserDTO.class, USER_DTO_PROPERTIES, matching, "login", afterLogin,
+            Sort.Direction.ASC, limit);
+    }
+
+    /**
+     * @return the number of users whose login or email contains the filter, cached for a minute
+     */
+    @Transactional(readOnly = true)
+    public long countUsers(String filter) {
+        return userRepository.countByFilter(likePattern(filter));
+    }
+
+    private static String likePattern(String filter) {
+        return StringUtils.isBlank(filter) ? "%" : "%" + filter.trim().toLowerCase() + "%";
+    }
+
     @Transactional(readOnly = true)
     public User getUserWithAuthorities() {
         User currentUser = userRepository.findOneByLogin(SecurityUtils.getCurrentLogin());
@@ -146,35 +225,80 @@ public class UserService {
      * 30 days.
      * <p/>
      * <p>
-     * This is scheduled to get fired everyday, at midnight.
+     * This is scheduled to get fired everyday, at midnight, on every node; the partitions of the purge
+     * are run by the nodes that lease them.
      * </p>
      */
     @Scheduled(cron = "0 0 0 * * ?")
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void removeOldPersistentTokens() {
         LocalDate now = new LocalDate();
-        List<PersistentToken> tokens = persistentTokenRepository.findByTokenDateBefore(now.minusMonths(1));
-        for (PersistentToken token : tokens) {
-            log.debug("Deleting token {}", token.getSeries());
-            User user = token.getUser();
-            user.getPersistentTokens().remove(token);
-            persistentTokenRepository.delete(token);
-        }
+        final Date before = new Date(now.minusMonths(1).toDate().getTime());
+        jobLeaseService.runPartitioned("removeOldPersistentTokens", new JobLeaseService.PartitionTask() {
+            @Override
+            public void run(int partition, int partitions) {
+                bulkDeleteService.deleteInChunks("persistentTokens",
+                    "select series from T_PERSISTENT_TOKEN where token_date < ? and mod(coalesce(user_id, 0), ?) = ?",
+                    new Object[]{before, partitions, partition},
+                    new BulkDeleteService.CacheEviction() {
+                        @Override
+                        public List<Invalidation> evictions(List<Object> keys) {
+                            List<Invalidation> evictions = new ArrayList<>();
+                            for (Object series : keys) {
+                                evictions.add(new Invalidation(Invalidation.Type.ENTITY, PersistentToken.class.getName(), (Serializable) series));
+                            }
+                            // the owning users are not known here
+                            evictions.add(new Invalidation(Invalidation.Type.COLLECTION, User.class.getName() + ".persistentTokens", null));
+                            return evictions;
+                        }
+                    },
+                    "delete from T_PERSISTENT_TOKEN where series in (:keys)");
+            }
+        });
     }
 
     /**
      * Not activated users should be automatically deleted after 3 days.
      * <p/>
      * <p>
-     * This is scheduled to get fired everyday, at 01:00 (am).
+     * This is scheduled to get fired everyday, at 01:00 (am), on every node; the partitions of the purge
+     * are run by the nodes that lease them.
      * </p>
      */
     @Scheduled(cron = "0 0 1 * * ?")
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void removeNotActivatedUsers() {
         DateTime now = new DateTime();
-        List<User> users = userRepository.findAllByActivatedIsFalseAndCreatedDateBefore(now.minusDays(3));
-        for (User user : users) {
-            log.debug("Deleting not activated user {}", user.getLogin());
-            userRepository.delete(user);
-        }
+        final Timestamp before = new Timestamp(now.minusDays(3).getMillis());
+        jobLeaseService.runPartitioned("removeNotActivatedUsers", new JobLeaseService.PartitionTask() {
+            @Override
+            public void run(int partition, int partitions) {
+                bulkDeleteService.deleteInChunks("notActivatedUsers",
+                    "select id from T_USER where activated = ? and created_date < ? and mod(id, ?) = ?",
+                    new Object[]{Boolean.FALSE, before, partitions, partition},
+                    new BulkDeleteService.CacheEviction() {
+                        @Override
+                        public List<Invalidation> evictions(List<Object> keys) {
+                            List<Invalidation> evictions = new ArrayList<>();
+                            for (Object key : keys) {
+                                Long id = ((Number) key).longValue();
+                                evictions.add(new Invalidation(Invalidation.Type.ENTITY, User.class.getName(), id));
+                                evictions.add(new Invalidation(Invalidation.Type.COLLECTION, User.class.getName() + ".authorities", id));
+                                evictions.add(new Invalidation(Invalidation.Type.COLLECTION, User.class.getName() + ".persistentTokens", id));
+                                evictions.add(new Invalidation(Invalidation.Type.COLLECTION, User.class.getName() + ".externalAccounts", id));
+                            }
+                            // their tokens and accounts are deleted by user id, their own keys are not known here
+                            evictions.add(new Invalidation(Invalidation.Type.ENTITY, PersistentToken.class.getName(), null));
+                            evictions.add(new Invalidation(Invalidation.Type.ENTITY, ExternalAccount.class.getName(), null));
+                            evictions.add(new Invalidation(Invalidation.Type.NATURAL_ID, ExternalAccount.class.getName(), null));
+                            return evictions;
+                        }
+                    },
+                    "delete from T_USER_AUTHORITY where user_id in (:keys)",
+                    "delete from T_PERSISTENT_TOKEN where user_id in (:keys)",
+                    "delete from T_EXTERNAL_ACCOUNT where user_id in (:keys)",
+                    "delete from T_USER where id in (:keys)");
+            }
+        });
     }
 }
@@ -1,7 +1,10 @@
 package de.witcom.app.service.util;
 
+import com.google.common.io.BaseEncoding;
 import org.apache.commons.lang.RandomStringUtils;
 
+import java.security.SecureRandom;
+
 /**
  * Utility class for generating random Strings.
  */
@@ -9,6 +12,13 @@ public final class RandomUtil {
 
     private static final int DEF_COUNT = 20;
 
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
     private RandomUtil() {
     }
 
@@ -29,4 +39,25 @@ public final class RandomUtil {
     public static String generateActivationKey() {
         return RandomStringUtils.randomNumeric(DEF_COUNT);
     }
+
+    /**
+     * Returns the calling thread's SecureRandom, so callers neither share a lock nor seed a new generator.
+     *
+     * @return the thread-local SecureRandom
+     */
+    public static SecureRandom secureRandom() {
+        return SECURE_RANDOM.get();
+    }
+
+    /**
+     * Generates a random token, e.g. for OAuth state and nonce values.
+     *
+     * @param numBytes the number of random bytes
+     * @return the random bytes, hex encoded
+     */
+    public static String generateToken(int numBytes) {
+        byte[] bytes = new byte[numBytes];
+        secureRandom().nextBytes(bytes);
+        return BaseEncoding.base16().lowerCase().encode(bytes);
+    }
 }
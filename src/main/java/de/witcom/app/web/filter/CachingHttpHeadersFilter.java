@@ -1,21 +1,38 @@
 package de.witcom.app.web.filter;
 
+import org.apache.commons.lang.StringUtils;
+
 import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
- * This filter is used in production, to put HTTP cache headers with a long (1 month) expiration time.
+ * This filter is used in production, to put HTTP cache headers on the static resources of the "dist" directory.
+ * <p/>
+ * <p>
+ * Files fingerprinted by "grunt build" never change, they are cached for a year as immutable. Other files
+ * are revalidated on each use: their Last-Modified date is the modification time of the file, kept by the
+ * {@link StaticAssetCache} shared with the {@link StaticResourcesProductionFilter}, and
+ * <code>If-Modified-Since</code> is answered with 304 before the rest of the chain runs.
+ * <code>If-None-Match</code>, which takes precedence, is answered by the {@link StaticResourcesProductionFilter}.
  * </p>
  */
 public class CachingHttpHeadersFilter implements Filter {
 
-    // Cache period is 1 month (in ms)
-    private final static long CACHE_PERIOD = TimeUnit.DAYS.toMillis(31L);
+    // Cache period of fingerprinted files is 1 year (in s)
+    private final static long IMMUTABLE_CACHE_PERIOD = TimeUnit.DAYS.toSeconds(365L);
+
+    // grunt-rev prefixes file names with 8 hex digits of their hash
+    private final static Pattern FINGERPRINTED = Pattern.compile("/[0-9a-f]{8}\\.[^/]+$");
 
-    // We consider the last modified date is the start up time of the server
-    private final static long LAST_MODIFIED = System.currentTimeMillis();
+    private final StaticAssetCache assetCache;
+
+    public CachingHttpHeadersFilter(StaticAssetCache assetCache) {
+        this.assetCache = assetCache;
+    }
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -29,17 +46,45 @@ public class CachingHttpHeadersFilter implements Filter {
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String path = StringUtils.substringAfter(httpRequest.getRequestURI(), httpRequest.getContextPath());
 
-        httpResponse.setHeader("Cache-Control", "max-age=2678400000, public");
-        httpResponse.setHeader("Pragma", "cache");
+        if (FINGERPRINTED.matcher(path).find()) {
+            httpResponse.setHeader("Cache-Control", "public, max-age=" + IMMUTABLE_CACHE_PERIOD + ", immutable");
+            // Setting Expires header, for proxy caching
+            httpResponse.setDateHeader("Expires", System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(IMMUTABLE_CACHE_PERIOD));
+        } else {
+            httpResponse.setHeader("Cache-Control", "public, no-cache");
+        }
 
-        // Setting Expires header, for proxy caching
-        httpResponse.setDateHeader("Expires", CACHE_PERIOD + System.currentTimeMillis());
-
-        // Setting the Last-Modified header, for browser caching
-        httpResponse.setDateHeader("Last-Modified", LAST_MODIFIED);
+        StaticAssetCache.Asset asset = assetCache.get(path);
+        long modified = asset != null ? asset.getLastModified() : 0;
+        if (modified > 0) {
+            // Setting the Last-Modified header, for browser caching
+            httpResponse.setDateHeader("Last-Modified", modified);
+            if (isNotModified(httpRequest, modified)) {
+                httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
 
         chain.doFilter(request, response);
     }
+
+    private boolean isNotModified(HttpServletRequest request, long modified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method) || request.getHeader("If-None-Match") != null) {
+            return false;
+        }
+        long since;
+        try {
+            since = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a precision of one second
+        return since >= 0 && modified / 1000 <= since / 1000;
+    }
+
 }
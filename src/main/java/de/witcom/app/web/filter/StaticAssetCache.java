@@ -0,0 +1,267 @@
+package de.witcom.app.web.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.codec.Hex;
+
+import javax.servlet.ServletContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the files of the "dist" directory in memory, with their precompressed sidecars (<code>.gz</code>,
+ * <code>.br</code>), a strong ETag derived from their content and their modification time. One instance
+ * is shared by the filters serving and revalidating static assets.
+ * <p/>
+ * The files are immutable for the life of the application, so they are loaded on first request and kept
+ * while the memory held by the cache, entries included, stays within <code>maxSize</code>. Files larger than
+ * <code>maxFileSize</code> and files requested once the budget is spent only keep their metadata; missing
+ * files are not cached.
+ */
+public class StaticAssetCache {
+
+    private static final Logger log = LoggerFactory.getLogger(StaticAssetCache.class);
+
+    /**
+     * A file with its representations.
+     */
+    static final class Asset {
+
+        private final String contentType;
+
+        private final byte[] identity;
+
+        private final byte[] gzip;
+
+        private final byte[] brotli;
+
+        private final String etag;
+
+        private final long lastModified;
+
+        Asset(String contentType, byte[] identity, byte[] gzip, byte[] brotli, String etag, long lastModified) {
+            this.contentType = contentType;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return false if only the metadata of the file is kept
+         */
+        boolean isCached() {
+            return identity != null;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        byte[] getIdentity() {
+            return identity;
+        }
+
+        /**
+         * @return null if there is no gzip sidecar
+         */
+        byte[] getGzip() {
+            return gzip;
+        }
+
+        /**
+         * @return null if there is no brotli sidecar
+         */
+        byte[] getBrotli() {
+            return brotli;
+        }
+
+        /**
+         * @return the hash of the content, to which representations append their encoding
+         */
+        String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the modification time of the file, 0 if unknown
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+
+        Asset withoutContent() {
+            return new Asset(contentType, null, null, null, null, lastModified);
+        }
+
+        long size() {
+            return (identity != null ? identity.length : 0) + (gzip != null ? gzip.length : 0) +
+                (brotli != null ? brotli.length : 0);
+        }
+    }
+
+    // estimated memory held by an entry besides its content, including the key
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final ServletContext servletContext;
+
+    private final String root;
+
+    private final long maxSize;
+
+    private final long maxFileSize;
+
+    private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+
+    private final AtomicLong size = new AtomicLong();
+
+    public StaticAssetCache(ServletContext servletContext, String root, long maxSize, long maxFileSize) {
+        this.servletContext = servletContext;
+        this.root = root;
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Only existing files are kept, missing paths are looked up again on each request.
+     *
+     * @param path path of the file, relative to the root directory
+     * @return null if the file does not exist, the metadata of the file if its content is not cached
+     */
+    Asset get(String path) throws IOException {
+        Asset asset = assets.get(path);
+        if (asset != null) {
+            return asset;
+        }
+        if (!isNormalized(path)) {
+            return null;
+        }
+        URL resource = servletContext.getResource(root + path);
+        if (resource == null) {
+            return null;
+        }
+        asset = load(path, resource, size.get() < maxSize);
+        if (asset == null) {
+            return null;
+        }
+        long entryFootprint = ENTRY_OVERHEAD + 2L * path.length();
+        long footprint = entryFootprint + asset.size();
+        if (!reserve(footprint)) {
+            if (!asset.isCached() || !reserve(entryFootprint)) {
+                // the budget is spent, the file is used without being cached
+                return asset;
+            }
+            // keep the metadata at least
+            asset = asset.withoutContent();
+            footprint = entryFootprint;
+        }
+        Asset previous = assets.putIfAbsent(path, asset);
+        if (previous != null) {
+            size.addAndGet(-footprint);
+            return previous;
+        }
+        return asset;
+    }
+
+    private boolean reserve(long footprint) {
+        if (size.addAndGet(footprint) > maxSize) {
+            size.addAndGet(-footprint);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Only one spelling of each file is accepted, so that the number of entries is bounded by the number of files.
+     */
+    private static boolean isNormalized(String path) {
+        return path.startsWith("/") && !path.endsWith("/") && !path.contains("..") && !path.contains("//") &&
+            !path.contains("/./") && !path.contains("\\");
+    }
+
+    /**
+     * @param withContent false to only read the metadata of the file
+     * @return null if the resource is not a file
+     */
+    private Asset load(String path, URL resource, boolean withContent) {
+        long lastModified;
+        byte[] identity = null;
+        try {
+            URLConnection connection = resource.openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                lastModified = connection.getLastModified();
+                if (withContent) {
+                    identity = read(connection, in);
+                }
+            }
+        } catch (IOException e) {
+            // directories
+            return null;
+        }
+        String contentType = servletContext.getMimeType(path);
+        if (identity == null) {
+            return new Asset(contentType, null, null, null, null, lastModified);
+        }
+        byte[] gzip = read(root + path + ".gz");
+        byte[] brotli = read(root + path + ".br");
+        log.debug("Caching static asset {}", path);
+        return new Asset(contentType, identity, gzip, brotli, hash(identity), lastModified);
+    }
+
+    /**
+     * @return null if there is no such file, or it is larger than <code>maxFileSize</code>
+     */
+    private byte[] read(String resourcePath) {
+        try {
+            URL resource = servletContext.getResource(resourcePath);
+            if (resource == null) {
+                return null;
+            }
+            URLConnection connection = resource.openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                return read(connection, in);
+            }
+        } catch (IOException e) {
+            // directories
+            return null;
+        }
+    }
+
+    /**
+     * @return null if the file is larger than <code>maxFileSize</code>
+     */
+    private byte[] read(URLConnection connection, InputStream in) throws IOException {
+        // the length is checked before reading when it is known, and while reading otherwise
+        if (connection.getContentLengthLong() > maxFileSize) {
+            return null;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            if (content.size() + read > maxFileSize) {
+                return null;
+            }
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return new String(Hex.encode(digest), 0, 32);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
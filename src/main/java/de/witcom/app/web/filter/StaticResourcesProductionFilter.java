@@ -5,6 +5,7 @@ import org.apache.commons.lang.StringUtils;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 /**
@@ -14,9 +15,22 @@ import java.io.IOException;
  * It is configured to serve resources from the "dist" directory, which is the Grunt
  * destination directory.
  * </p>
+ * <p>
+ * Files are served from memory (see {@link StaticAssetCache}) with a strong ETag, answering
+ * <code>If-None-Match</code> with 304, and in their precompressed form when the client accepts it, so
+ * the gzip filter never compresses them. Files not cached are forwarded to "dist".
+ * </p>
  */
 public class StaticResourcesProductionFilter implements Filter {
 
+    public static final String ROOT = "/dist";
+
+    private final StaticAssetCache assetCache;
+
+    public StaticResourcesProductionFilter(StaticAssetCache assetCache) {
+        this.assetCache = assetCache;
+    }
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         // Nothing to initialize
@@ -36,7 +50,68 @@ public class StaticResourcesProductionFilter implements Filter {
         if (StringUtils.equals("/", requestURI)) {
             requestURI = "/index.html";
         }
-        String newURI = "/dist" + requestURI;
+        String method = httpRequest.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            StaticAssetCache.Asset asset = assetCache.get(requestURI);
+            if (asset != null && asset.isCached()) {
+                serve(httpRequest, (HttpServletResponse) response, asset);
+                return;
+            }
+        }
+        String newURI = ROOT + requestURI;
         request.getRequestDispatcher(newURI).forward(request, response);
     }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, StaticAssetCache.Asset asset)
+        throws IOException {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        byte[] body = asset.getIdentity();
+        String encoding = null;
+        if (acceptEncoding != null && asset.getBrotli() != null && acceptEncoding.contains("br")) {
+            body = asset.getBrotli();
+            encoding = "br";
+        } else if (acceptEncoding != null && asset.getGzip() != null && acceptEncoding.contains("gzip")) {
+            body = asset.getGzip();
+            encoding = "gzip";
+        }
+        // representations differ by encoding, so do their strong ETags
+        String etag = "\"" + asset.getEtag() + (encoding != null ? "-" + encoding : "") + "\"";
+        response.setHeader("ETag", etag);
+        if (asset.getGzip() != null || asset.getBrotli() != null) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        if (matches(request.getHeader("If-None-Match"), asset.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (asset.getContentType() != null) {
+            response.setContentType(asset.getContentType());
+        }
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setContentLength(body.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * @return true if one of the ETags is one of the representations of the asset
+     */
+    private static boolean matches(String ifNoneMatch, String hash) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        for (String etag : ifNoneMatch.split(",")) {
+            String value = StringUtils.removeStart(etag.trim(), "W/");
+            if (value.equals("\"" + hash + "\"") || value.startsWith("\"" + hash + "-")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
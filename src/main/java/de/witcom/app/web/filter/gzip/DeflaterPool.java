@@ -0,0 +1,42 @@
+package de.witcom.app.web.filter.gzip;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Reuses Deflaters, which hold native memory that is otherwise only freed by finalization.
+ */
+class DeflaterPool {
+
+    private final BlockingQueue<Deflater> deflaters;
+
+    private final int level;
+
+    DeflaterPool(int capacity, int level) {
+        this.deflaters = new ArrayBlockingQueue<>(capacity);
+        this.level = level;
+    }
+
+    /**
+     * @return a Deflater producing raw deflate data, as needed inside gzip
+     */
+    Deflater acquire() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    void clear() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
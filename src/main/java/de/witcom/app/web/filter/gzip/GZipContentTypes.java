@@ -0,0 +1,51 @@
+package de.witcom.app.web.filter.gzip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Content types not worth compressing, because they are compressed already.
+ */
+class GZipContentTypes {
+
+    /**
+     * Entries ending with a slash match all subtypes.
+     */
+    static final String DEFAULT_EXCLUDED = "image/,video/,audio/,application/zip,application/gzip,application/x-gzip," +
+        "application/pdf,application/font-woff,application/x-font-woff,font/woff,font/woff2";
+
+    private final List<String> excluded = new ArrayList<>();
+
+    GZipContentTypes(String excluded) {
+        for (String type : excluded.split(",")) {
+            if (!type.trim().isEmpty()) {
+                this.excluded.add(type.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+    }
+
+    /**
+     * @param contentType may have parameters, or be null if unknown
+     */
+    boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        if (type.equals("image/svg+xml")) {
+            // text
+            return true;
+        }
+        for (String excludedType : excluded) {
+            if (excludedType.endsWith("/") ? type.startsWith(excludedType) : type.equals(excludedType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
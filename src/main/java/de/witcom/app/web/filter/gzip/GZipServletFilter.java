@@ -8,20 +8,47 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
+/**
+ * Compresses responses for clients accepting gzip.
+ * <p/>
+ * By default the whole body is compressed in memory, so that the response gets a Content-Length. With the
+ * <code>streaming</code> init parameter, bodies larger than <code>threshold</code> bytes (1024) are compressed
+ * straight into the response with chunked transfer, using pooled Deflaters, and the content types listed in
+ * <code>excludedContentTypes</code> are not compressed.
+ */
 public class GZipServletFilter implements Filter {
 
     private Logger log = LoggerFactory.getLogger(GZipServletFilter.class);
 
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private boolean streaming;
+
+    private int threshold = DEFAULT_THRESHOLD;
+
+    private GZipContentTypes contentTypes;
+
+    private DeflaterPool deflaterPool;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        // Nothing to initialize
+        streaming = Boolean.parseBoolean(filterConfig.getInitParameter("streaming"));
+        if (filterConfig.getInitParameter("threshold") != null) {
+            threshold = Integer.parseInt(filterConfig.getInitParameter("threshold"));
+        }
+        String excluded = filterConfig.getInitParameter("excludedContentTypes");
+        contentTypes = new GZipContentTypes(excluded != null ? excluded : GZipContentTypes.DEFAULT_EXCLUDED);
+        deflaterPool = new DeflaterPool(Runtime.getRuntime().availableProcessors() * 4, Deflater.DEFAULT_COMPRESSION);
     }
 
     @Override
     public void destroy() {
-        // Nothing to destroy
+        if (deflaterPool != null) {
+            deflaterPool.clear();
+        }
     }
 
     @Override
@@ -36,6 +63,18 @@ public class GZipServletFilter implements Filter {
                 log.trace("{} Written with gzip compression", httpRequest.getRequestURL());
             }
 
+            if (streaming) {
+                StreamingGZipServletResponseWrapper wrapper =
+                    new StreamingGZipServletResponseWrapper(httpRequest, httpResponse, deflaterPool, contentTypes, threshold);
+                try {
+                    chain.doFilter(request, wrapper);
+                    wrapper.finish();
+                } finally {
+                    wrapper.release();
+                }
+                return;
+            }
+
             // Create a gzip stream
             final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
             final GZIPOutputStream gzout = new GZIPOutputStream(compressed);
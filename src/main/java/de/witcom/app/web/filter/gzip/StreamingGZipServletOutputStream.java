@@ -0,0 +1,214 @@
+package de.witcom.app.web.filter.gzip;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses the response body straight into the container output stream.
+ * <p/>
+ * The first <code>threshold</code> bytes are buffered: a body that fits is sent uncompressed with its
+ * Content-Length. Once it is exceeded the response is compressed, unless its status forbids a body, it is
+ * already encoded or its content type is not worth compressing, and sent in chunks without Content-Length.
+ * Flushes below the threshold are deferred, flushes of compressed data are sync flushes, so that streamed
+ * responses reach the client progressively.
+ */
+class StreamingGZipServletOutputStream extends ServletOutputStream {
+
+    // magic number, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int DEFLATER_BUFFER_SIZE = 8192;
+
+    private final HttpServletRequest request;
+
+    private final HttpServletResponse response;
+
+    private final DeflaterPool deflaterPool;
+
+    private final GZipContentTypes contentTypes;
+
+    private final byte[] buffer;
+
+    private int count;
+
+    private OutputStream out;
+
+    private Deflater deflater;
+
+    private DeflaterOutputStream deflating;
+
+    private final CRC32 crc = new CRC32();
+
+    private boolean discard;
+
+    private boolean finished;
+
+    StreamingGZipServletOutputStream(HttpServletRequest request, HttpServletResponse response, DeflaterPool deflaterPool,
+                                     GZipContentTypes contentTypes, int threshold) {
+        this.request = request;
+        this.response = response;
+        this.deflaterPool = deflaterPool;
+        this.contentTypes = contentTypes;
+        this.buffer = new byte[threshold];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (out == null && count < buffer.length) {
+            buffer[count++] = (byte) b;
+            return;
+        }
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (out == null) {
+            if (count + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            start();
+        }
+        writeOut(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // below the threshold the decision to compress is deferred
+        if (deflating != null) {
+            // sync flush of the compressed data, then of the container stream
+            deflating.flush();
+        } else if (out != null && !discard) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        response.getOutputStream().close();
+    }
+
+    /**
+     * Writes what is buffered, or the end of the compressed data, without closing the container stream.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (out == null) {
+                if (GZipResponseUtil.shouldBodyBeZero(request, response.getStatus())) {
+                    response.setContentLength(0);
+                } else if (!response.isCommitted()) {
+                    response.setContentLength(count);
+                    response.getOutputStream().write(buffer, 0, count);
+                } else {
+                    response.getOutputStream().write(buffer, 0, count);
+                }
+            } else if (deflating != null) {
+                deflating.finish();
+                writeTrailer(response.getOutputStream());
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Gives the Deflater back, also when the response failed.
+     */
+    void release() {
+        if (deflater != null) {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    /**
+     * Drops what is buffered, if nothing has been sent yet.
+     *
+     * @return false if part of the body has already been sent
+     */
+    boolean resetBuffer() {
+        if (out != null) {
+            return false;
+        }
+        count = 0;
+        return true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+
+    }
+
+    private void start() throws IOException {
+        if (GZipResponseUtil.shouldBodyBeZero(request, response.getStatus())) {
+            discard = true;
+            out = response.getOutputStream();
+        } else if (response.getHeader("Content-Encoding") == null && contentTypes.isCompressible(response.getContentType())) {
+            try {
+                GZipResponseUtil.addGzipHeader(response);
+                response.addHeader("Vary", "Accept-Encoding");
+                out = response.getOutputStream();
+                out.write(GZIP_HEADER);
+                deflater = deflaterPool.acquire();
+                deflating = new DeflaterOutputStream(out, deflater, DEFLATER_BUFFER_SIZE, true);
+            } catch (GzipResponseHeadersNotModifiableException e) {
+                out = response.getOutputStream();
+            }
+        } else {
+            out = response.getOutputStream();
+        }
+        int pending = count;
+        count = 0;
+        writeOut(buffer, 0, pending);
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+        if (discard || len == 0) {
+            return;
+        }
+        if (deflating != null) {
+            crc.update(b, off, len);
+            deflating.write(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
+    }
+
+    private void writeTrailer(OutputStream stream) throws IOException {
+        long checksum = crc.getValue();
+        long size = deflater.getBytesRead();
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (checksum >> (8 * i));
+            trailer[4 + i] = (byte) (size >> (8 * i));
+        }
+        stream.write(trailer);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
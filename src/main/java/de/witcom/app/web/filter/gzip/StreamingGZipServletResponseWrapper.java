@@ -0,0 +1,116 @@
+package de.witcom.app.web.filter.gzip;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Response of the streaming mode of {@link GZipServletFilter}, see {@link StreamingGZipServletOutputStream}.
+ */
+class StreamingGZipServletResponseWrapper extends HttpServletResponseWrapper {
+
+    private final StreamingGZipServletOutputStream outputStream;
+
+    private PrintWriter printWriter;
+
+    StreamingGZipServletResponseWrapper(HttpServletRequest request, HttpServletResponse response, DeflaterPool deflaterPool,
+                                        GZipContentTypes contentTypes, int threshold) {
+        super(response);
+        this.outputStream = new StreamingGZipServletOutputStream(request, response, deflaterPool, contentTypes, threshold);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.printWriter != null) {
+            throw new IllegalStateException("PrintWriter obtained already - cannot get OutputStream");
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.printWriter == null) {
+            this.printWriter = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return this.printWriter;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        // the length is set once known, if the body is not compressed
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        // the length is set once known, if the body is not compressed
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (this.printWriter != null) {
+            this.printWriter.flush();
+        }
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (!outputStream.resetBuffer()) {
+            super.resetBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (!outputStream.resetBuffer()) {
+            throw new IllegalStateException("Response body already sent");
+        }
+    }
+
+    /**
+     * Writes the rest of the body, see {@link StreamingGZipServletOutputStream#finish()}.
+     */
+    void finish() throws IOException {
+        if (this.printWriter != null) {
+            this.printWriter.flush();
+        }
+        this.outputStream.finish();
+    }
+
+    void release() {
+        this.outputStream.release();
+    }
+}
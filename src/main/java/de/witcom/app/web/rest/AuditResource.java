@@ -1,17 +1,35 @@
 package de.witcom.app.web.rest;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.witcom.app.config.audit.AuditEventStatistics;
+import de.witcom.app.repository.AuditEventReader;
 import de.witcom.app.security.AuthoritiesConstants;
 import de.witcom.app.service.AuditEventService;
 import de.witcom.app.web.propertyeditors.LocaleDateTimeEditor;
+import de.witcom.app.web.rest.dto.AuditStatisticsDTO;
+import de.witcom.app.web.rest.util.CursorCodec;
+import de.witcom.app.web.rest.util.PaginationUtil;
 import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * REST controller for getting the audit events.
@@ -20,9 +38,39 @@ import java.util.List;
 @RequestMapping("/api")
 public class AuditResource {
 
+    private final Logger log = LoggerFactory.getLogger(AuditResource.class);
+
+    public static final int DEFAULT_MAX_STREAMED_EVENTS = 100000;
+
+    /**
+     * Events read per query while streaming.
+     */
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    private static final String CURSOR_SCOPE = "audits";
+
     @Inject
     private AuditEventService auditEventService;
 
+    @Inject
+    private AuditEventStatistics auditEventStatistics;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private CursorCodec cursorCodec;
+
+    @Inject
+    private Environment env;
+
+    private int maxStreamedEvents;
+
+    @PostConstruct
+    public void init() {
+        maxStreamedEvents = env.getProperty("jhipster.audit.maxStreamedEvents", Integer.class, DEFAULT_MAX_STREAMED_EVENTS);
+    }
+
     @InitBinder
     public void initBinder(WebDataBinder binder) {
         binder.registerCustomEditor(LocalDateTime.class, new LocaleDateTimeEditor("yyyy-MM-dd", false));
@@ -44,4 +92,93 @@ public class AuditResource {
                                     @RequestParam(value = "toDate") LocalDateTime toDate) {
         return auditEventService.findByDates(fromDate, toDate);
     }
+
+    /**
+     * GET  /audits -> get a page of audit events, most recent first, optionally filtered. The next page is
+     * linked with the cursor of the last event of this page.
+     */
+    @RequestMapping(value = "/audits",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<List<AuditEvent>> findPage(@RequestParam(value = "principal", required = false) String principal,
+                                                     @RequestParam(value = "fromDate", required = false) LocalDateTime fromDate,
+                                                     @RequestParam(value = "toDate", required = false) LocalDateTime toDate,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "per_page", required = false) Integer limit) {
+        AuditEventReader.Cursor after;
+        try {
+            after = cursor == null || cursor.isEmpty() ? null : AuditEventReader.Cursor.parse(cursorCodec.decode(CURSOR_SCOPE, cursor));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (limit == null || limit < 1 || limit > PaginationUtil.MAX_LIMIT) {
+            limit = PaginationUtil.DEFAULT_LIMIT;
+        }
+        AuditEventReader.Page page = auditEventService.findPage(principal, fromDate, toDate, after, limit);
+        return new ResponseEntity<>(page.getEvents(), PaginationUtil.generateKeysetPaginationHttpHeaders(
+            ServletUriComponentsBuilder.fromCurrentRequest(),
+            page.getNext() == null ? null : cursorCodec.encode(CURSOR_SCOPE, page.getNext().toString()), limit, null),
+            HttpStatus.OK);
+    }
+
+    /**
+     * GET  /audits/stream -> get the audit events, most recent first, optionally filtered, as a JSON array
+     * written while the events are read. At most <code>jhipster.audit.maxStreamedEvents</code> events are
+     * returned.
+     */
+    @RequestMapping(value = "/audits/stream",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public void stream(@RequestParam(value = "principal", required = false) String principal,
+                       @RequestParam(value = "fromDate", required = false) LocalDateTime fromDate,
+                       @RequestParam(value = "toDate", required = false) LocalDateTime toDate,
+                       HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        int written = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            AuditEventReader.Cursor after = null;
+            do {
+                AuditEventReader.Page page = auditEventService.findPage(principal, fromDate, toDate, after,
+                    Math.min(STREAM_CHUNK_SIZE, maxStreamedEvents - written));
+                for (AuditEvent event : page.getEvents()) {
+                    generator.writeObject(event);
+                }
+                generator.flush();
+                written += page.getEvents().size();
+                after = page.getNext();
+            } while (after != null && written < maxStreamedEvents);
+            generator.writeEndArray();
+            if (after != null) {
+                log.warn("Audit event stream truncated to {} events", written);
+            }
+        }
+    }
+
+    /**
+     * GET  /audits/statistics -> get the counts of audit events per type, over the last 60 minutes and
+     * 24 hours, recorded by this node.
+     */
+    @RequestMapping(value = "/audits/statistics",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public AuditStatisticsDTO getStatistics() {
+        return new AuditStatisticsDTO(auditEventStatistics.getPerMinute(), auditEventStatistics.getPerHour());
+    }
+
+    /**
+     * GET  /audits/statistics/:principal -> get the counts of audit events of the principal per type, over
+     * the last 24 hours, recorded by this node.
+     */
+    @RequestMapping(value = "/audits/statistics/{principal:.+}",
+            method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public Map<String, long[]> getStatistics(@PathVariable String principal) {
+        return auditEventStatistics.getPerHour(principal);
+    }
 }
@@ -4,16 +4,28 @@ import com.codahale.metrics.annotation.Timed;
 import de.witcom.app.domain.User;
 import de.witcom.app.repository.UserRepository;
 import de.witcom.app.security.AuthoritiesConstants;
+import de.witcom.app.service.UserService;
+import de.witcom.app.web.rest.dto.UserDTO;
+import de.witcom.app.web.rest.util.CursorCodec;
+import de.witcom.app.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
+import java.util.Arrays;
 import java.util.List;
 import javax.servlet.http.HttpServletResponse;
 
@@ -26,19 +38,70 @@ public class UserResource {
 
     private final Logger log = LoggerFactory.getLogger(UserResource.class);
 
+    /**
+     * Properties the user list may be sorted by.
+     */
+    private static final List<String> SORT_PROPERTIES = Arrays.asList("login", "firstName", "lastName", "email");
+
+    private static final String CURSOR_SCOPE = "users";
+
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private UserService userService;
+
+    @Inject
+    private CursorCodec cursorCodec;
+
     /**
-     * GET  /users -> get all users.
+     * GET  /users -> get a page of users, whose login or email contains the filter.
+     * <p/>
+     * <p>
+     * Pages are addressed by number (<code>page</code>), or, to go deep into the list, by the cursor of the
+     * previous page (<code>cursor</code>, empty for the first page), in which case the users are sorted by
+     * login and counted only when <code>total</code> is set.
+     * </p>
      */
     @RequestMapping(value = "/users",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public List<User> getAll() {
-        log.debug("REST request to get all Users");
-        return userRepository.findAll();
+    public ResponseEntity<List<UserDTO>> getAll(@RequestParam(value = "page", required = false) Integer offset,
+                                                @RequestParam(value = "per_page", required = false) Integer limit,
+                                                @RequestParam(value = "sort", required = false, defaultValue = "login") String sort,
+                                                @RequestParam(value = "direction", required = false, defaultValue = "asc") String direction,
+                                                @RequestParam(value = "filter", required = false) String filter,
+                                                @RequestParam(value = "cursor", required = false) String cursor,
+                                                @RequestParam(value = "total", required = false, defaultValue = "false") boolean total) {
+        log.debug("REST request to get a page of Users");
+        if (!SORT_PROPERTIES.contains(sort)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (cursor != null) {
+            String after;
+            try {
+                after = cursor.isEmpty() ? null : cursorCodec.decode(CURSOR_SCOPE, cursor);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            int size = PaginationUtil.generatePageRequest(1, limit).getPageSize();
+            List<UserDTO> users = userService.getUsersAfter(filter, after, size);
+            String next = users.size() < size ? null : cursorCodec.encode(CURSOR_SCOPE, users.get(users.size() - 1).getLogin());
+            return new ResponseEntity<>(users, PaginationUtil.generateKeysetPaginationHttpHeaders(
+                ServletUriComponentsBuilder.fromCurrentRequest(), next, size, total ? userService.countUsers(filter) : null),
+                HttpStatus.OK);
+        }
+        Sort sorting = new Sort("desc".equalsIgnoreCase(direction) ? Sort.Direction.DESC : Sort.Direction.ASC, sort);
+        if (!"login".equals(sort)) {
+            // logins are unique, pages stay stable when sorted values are equal
+            sorting = sorting.and(new Sort("login"));
+        }
+        PageRequest pageRequest = PaginationUtil.generatePageRequest(offset, limit);
+        Page<UserDTO> page = userService.getUsers(filter,
+            new PageRequest(pageRequest.getPageNumber(), pageRequest.getPageSize(), sorting));
+        return new ResponseEntity<>(page.getContent(), PaginationUtil.generatePaginationHttpHeaders(page,
+            ServletUriComponentsBuilder.fromCurrentRequest(), pageRequest.getPageNumber() + 1, pageRequest.getPageSize()), HttpStatus.OK);
     }
 
     /**
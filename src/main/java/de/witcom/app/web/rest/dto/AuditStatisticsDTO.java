@@ -0,0 +1,37 @@
+package de.witcom.app.web.rest.dto;
+
+import java.util.Map;
+
+/**
+ * Audit event counts per type, oldest first, the last count being the current minute or hour.
+ */
+public class AuditStatisticsDTO {
+
+    private Map<String, long[]> perMinute;
+
+    private Map<String, long[]> perHour;
+
+    public AuditStatisticsDTO() {
+    }
+
+    public AuditStatisticsDTO(Map<String, long[]> perMinute, Map<String, long[]> perHour) {
+        this.perMinute = perMinute;
+        this.perHour = perHour;
+    }
+
+    public Map<String, long[]> getPerMinute() {
+        return perMinute;
+    }
+
+    public void setPerMinute(Map<String, long[]> perMinute) {
+        this.perMinute = perMinute;
+    }
+
+    public Map<String, long[]> getPerHour() {
+        return perHour;
+    }
+
+    public void setPerHour(Map<String, long[]> perHour) {
+        this.perHour = perHour;
+    }
+}
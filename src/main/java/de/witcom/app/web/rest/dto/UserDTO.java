@@ -71,6 +71,17 @@ public class UserDTO {
         this.externalAccounts = externalAccounts;
     }
 
+    /**
+     * Projection of the user list, see UserRepository.
+     */
+    public UserDTO(String login, String firstName, String lastName, String email, String langKey) {
+        this.login = login;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.langKey = langKey;
+    }
+
     public UserDTO(String firstName, String lastName, String email, ExternalAccount externalAccount) {
         this.firstName = firstName;
         this.lastName = lastName;
@@ -0,0 +1,96 @@
+package de.witcom.app.web.rest.util;
+
+import org.springframework.core.env.Environment;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Encodes the position of a page into an opaque continuation token, signed so that clients cannot forge
+ * positions, and scoped so that a token of one list is rejected by another.
+ * <p/>
+ * Tokens are signed with <code>jhipster.pagination.cursorKey</code>, by default derived from the
+ * remember-me key; all nodes must share it.
+ */
+@Component
+public class CursorCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int SIGNATURE_LENGTH = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SecretKeySpec key;
+
+    @Inject
+    public CursorCodec(Environment env) throws GeneralSecurityException {
+        String secret = env.getProperty("jhipster.pagination.cursorKey");
+        if (secret == null) {
+            // derived, so that the remember-me key itself never signs client-chosen data
+            secret = new String(Hex.encode(sign(new SecretKeySpec(
+                env.getRequiredProperty("jhipster.security.rememberme.key").getBytes(UTF_8), ALGORITHM),
+                "pagination-cursor".getBytes(UTF_8))));
+        }
+        this.key = new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM);
+    }
+
+    /**
+     * @param scope the list the position belongs to
+     * @param value the position, for example the key of the last row of a page
+     */
+    public String encode(String scope, String value) {
+        byte[] payload = value.getBytes(UTF_8);
+        return new String(Hex.encode(payload)) + "." + new String(Hex.encode(signature(scope, payload)));
+    }
+
+    /**
+     * @return the position
+     * @throws IllegalArgumentException if the token is malformed, or has not been issued for that scope
+     */
+    public String decode(String scope, String token) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Hex.decode(token.substring(0, separator));
+            signature = Hex.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (!MessageDigest.isEqual(signature, signature(scope, payload))) {
+            throw new IllegalArgumentException("Invalid cursor signature");
+        }
+        return new String(payload, UTF_8);
+    }
+
+    private byte[] signature(String scope, byte[] payload) {
+        // scope and payload separated by a zero byte
+        byte[] prefix = scope.getBytes(UTF_8);
+        byte[] scoped = new byte[prefix.length + 1 + payload.length];
+        System.arraycopy(prefix, 0, scoped, 0, prefix.length);
+        System.arraycopy(payload, 0, scoped, prefix.length + 1, payload.length);
+        try {
+            return Arrays.copyOf(sign(key, scoped), SIGNATURE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sign(SecretKeySpec key, byte[] data) throws GeneralSecurityException {
+        // Mac instances are not thread-safe
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac.doFinal(data);
+    }
+}
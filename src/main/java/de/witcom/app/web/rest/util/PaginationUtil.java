@@ -3,9 +3,7 @@ package de.witcom.app.web.rest.util;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
-
-import java.net.URI;
-import java.net.URISyntaxException;
+import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * Utility class for handling pagination.
@@ -29,36 +27,68 @@ public class PaginationUtil {
         if (offset == null || offset < MIN_OFFSET) {
             offset = DEFAULT_OFFSET;
         }
-        if (limit == null || limit > MAX_LIMIT) {
+        if (limit == null || limit < 1 || limit > MAX_LIMIT) {
             limit = DEFAULT_LIMIT;
         }
         return new PageRequest(offset - 1, limit);
     }
 
-    public static HttpHeaders generatePaginationHttpHeaders(Page page, String baseUrl, Integer offset, Integer limit)
-        throws URISyntaxException {
-
+    /**
+     * @param request the current request, whose other parameters, such as filters and sort, are kept
+     */
+    public static HttpHeaders generatePaginationHttpHeaders(Page page, UriComponentsBuilder request, Integer offset,
+                                                            Integer limit) {
         if (offset == null || offset < MIN_OFFSET) {
             offset = DEFAULT_OFFSET;
         }
-        if (limit == null || limit > MAX_LIMIT) {
+        if (limit == null || limit < 1 || limit > MAX_LIMIT) {
             limit = DEFAULT_LIMIT;
         }
         HttpHeaders headers = new HttpHeaders();
         headers.add("X-Total-Count", "" + page.getTotalElements());
-        String link = "";
+        request.replaceQueryParam("per_page", limit);
+        StringBuilder link = new StringBuilder();
         if (offset < page.getTotalPages()) {
-            link = "<" + (new URI(baseUrl +"?page=" + (offset + 1) + "&per_page=" + limit)).toString()
-                + ">; rel=\"next\",";
+            link.append(link(request, offset + 1, "next")).append(',');
         }
         if (offset > 1) {
-            link += "<" + (new URI(baseUrl +"?page=" + (offset - 1) + "&per_page=" + limit)).toString()
-                + ">; rel=\"prev\",";
+            link.append(link(request, offset - 1, "prev")).append(',');
+        }
+        link.append(link(request, page.getTotalPages(), "last")).append(',')
+            .append(link(request, 1, "first"));
+        headers.add(HttpHeaders.LINK, link.toString());
+        return headers;
+    }
+
+    private static String link(UriComponentsBuilder request, int page, String rel) {
+        return "<" + request.replaceQueryParam("page", page).build().toUriString() + ">; rel=\"" + rel + "\"";
+    }
+
+    /**
+     * Link headers for keyset pagination: pages are addressed by an opaque cursor (see {@link CursorCodec})
+     * instead of a page number, so there is no last page. The first page has an empty cursor.
+     *
+     * @param request the current request, whose other parameters are kept
+     * @param next    cursor of the next page, null if this is the last page
+     * @param total   sent as X-Total-Count if not null
+     */
+    public static HttpHeaders generateKeysetPaginationHttpHeaders(UriComponentsBuilder request, String next, Integer limit,
+                                                                  Long total) {
+        if (limit == null || limit > MAX_LIMIT) {
+            limit = DEFAULT_LIMIT;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (total != null) {
+            headers.add("X-Total-Count", "" + total);
+        }
+        request.replaceQueryParam("per_page", limit);
+        String link = "";
+        if (next != null) {
+            // cursors are hexadecimal, they need no encoding
+            link = "<" + request.replaceQueryParam("cursor", next).build().toUriString() + ">; rel=\"next\",";
         }
-        link += "<" + (new URI(baseUrl +"?page=" + page.getTotalPages() + "&per_page=" + limit)).toString()
-            + ">; rel=\"last\"," +
-            "<" + (new URI(baseUrl +"?page=" + 1 + "&per_page=" + limit)).toString()
-            + ">; rel=\"first\"";
+        // an empty cursor stays in keyset mode, where it addresses the first page
+        link += "<" + request.replaceQueryParam("cursor", "").build().toUriString() + ">; rel=\"first\"";
         headers.add(HttpHeaders.LINK, link);
         return headers;
     }
@@ -0,0 +1,116 @@
+package de.witcom.app.config.audit;
+
+import de.witcom.app.domain.PersistentAuditEvent;
+import org.joda.time.LocalDateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the AuditEventWriter, against an in-memory database that can refuse transactions.
+ *
+ * @see AuditEventWriter
+ */
+public class AuditEventWriterTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private AuditEventWriter writer;
+
+    private volatile boolean databaseDown;
+
+    private final CountDownLatch failedAttempt = new CountDownLatch(1);
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("audit-writer-test").build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table T_PERSISTENT_AUDIT_EVENT (event_id bigint auto_increment primary key, " +
+            "principal varchar(50), event_date timestamp, event_bucket int, event_type varchar(255), event_data clob)");
+
+        MockEnvironment env = new MockEnvironment();
+        env.setProperty("jhipster.audit.flushInterval", "10");
+        writer = new AuditEventWriter(env, database, new DataSourceTransactionManager(database) {
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+                if (databaseDown) {
+                    failedAttempt.countDown();
+                    throw new CannotCreateTransactionException("Database is down");
+                }
+                super.doBegin(transaction, definition);
+            }
+        });
+        writer.start();
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        writer.stop();
+        database.shutdown();
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() throws InterruptedException {
+        databaseDown = true;
+        writer.add(event("retried"));
+        assertThat(failedAttempt.await(5, TimeUnit.SECONDS)).isTrue();
+
+        databaseDown = false;
+        writer.add(event("written"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(jdbcTemplate.queryForList("select principal from T_PERSISTENT_AUDIT_EVENT order by event_id", String.class))
+            .containsExactly("retried", "written");
+    }
+
+    @Test
+    public void testStopKeepsEventsWhileDatabaseIsDown() throws InterruptedException {
+        databaseDown = true;
+        writer.add(event("first"));
+        writer.add(event("second"));
+        writer.stop();
+        assertThat(count()).isEqualTo(0);
+
+        // nothing has been given up on: the failed batch, then the rest of the buffer
+        databaseDown = false;
+        int written = 0;
+        int count;
+        while ((count = writer.flush()) > 0) {
+            written += count;
+        }
+        assertThat(written).isEqualTo(2);
+        assertThat(count()).isEqualTo(2);
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("select count(*) from T_PERSISTENT_AUDIT_EVENT", Integer.class);
+    }
+
+    private PersistentAuditEvent event(String principal) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventDate(new LocalDateTime());
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        event.setData(Collections.singletonMap("remoteAddress", "127.0.0.1"));
+        return event;
+    }
+}
@@ -0,0 +1,188 @@
+package de.witcom.app.config.cache;
+
+import net.sf.ehcache.CacheManager;
+import org.hibernate.Cache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the ClusterCacheInvalidator, with two nodes connected by the loopback transport.
+ *
+ * @see ClusterCacheInvalidator
+ */
+public class ClusterCacheInvalidatorTest {
+
+    private static final String USER = "de.witcom.app.domain.User";
+
+    private ClusterCacheInvalidator local;
+
+    private ClusterCacheInvalidator remote;
+
+    private Cache remoteCache;
+
+    private LoopbackInvalidationTransport observer;
+
+    private final List<List<Invalidation>> batches = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        String group = UUID.randomUUID().toString();
+        local = new ClusterCacheInvalidator(sessionFactory(mock(Cache.class)), mock(CacheManager.class),
+            new LoopbackInvalidationTransport(group));
+        local.start(Collections.<String>emptyList());
+        remoteCache = mock(Cache.class);
+        remote = new ClusterCacheInvalidator(sessionFactory(remoteCache), mock(CacheManager.class),
+            new LoopbackInvalidationTransport(group));
+        remote.start(Collections.<String>emptyList());
+        observer = new LoopbackInvalidationTransport(group);
+        observer.start(new InvalidationTransport.Receiver() {
+            @Override
+            public void receive(List<Invalidation> invalidations) {
+                batches.add(invalidations);
+            }
+        });
+    }
+
+    @After
+    public void teardown() throws IOException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        local.close();
+        remote.close();
+        observer.close();
+    }
+
+    @Test
+    public void testUpdateOutsideTransactionIsSentImmediately() {
+        local.onPostUpdate(updateEvent(1L));
+
+        verify(remoteCache).evictEntity(USER, 1L);
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void testUpdatesAreBatchedUntilCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        local.onPostUpdate(updateEvent(1L));
+        local.onPostUpdate(updateEvent(1L));
+        local.onPostUpdate(updateEvent(2L));
+
+        verify(remoteCache, never()).evictEntity(anyString(), any(Long.class));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(remoteCache).evictEntity(USER, 1L);
+        verify(remoteCache).evictEntity(USER, 2L);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactly(
+            new Invalidation(Invalidation.Type.ENTITY, USER, 1L),
+            new Invalidation(Invalidation.Type.ENTITY, USER, 2L));
+    }
+
+    @Test
+    public void testRollbackSendsNothing() {
+        TransactionSynchronizationManager.initSynchronization();
+        local.onPostUpdate(updateEvent(1L));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verifyZeroInteractions(remoteCache);
+        assertThat(batches).isEmpty();
+        assertThat(TransactionSynchronizationManager.getResource(local)).isNull();
+    }
+
+    @Test
+    public void testDirectEvictionsAreBatchedUntilCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        local.invalidate(new Invalidation(Invalidation.Type.ENTITY, USER, 1L));
+        local.invalidate(new Invalidation(Invalidation.Type.COLLECTION, USER + ".authorities", null));
+
+        verifyZeroInteractions(remoteCache);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(remoteCache).evictEntity(USER, 1L);
+        verify(remoteCache).evictCollectionRegion(USER + ".authorities");
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void testNothingIsSentWithoutTransport() throws IOException {
+        ClusterCacheInvalidator single = new ClusterCacheInvalidator(sessionFactory(mock(Cache.class)),
+            mock(CacheManager.class), null);
+        single.start(Collections.<String>emptyList());
+        single.invalidate(new Invalidation(Invalidation.Type.ENTITY, USER, 1L));
+        single.close();
+
+        verifyZeroInteractions(remoteCache);
+        assertThat(batches).isEmpty();
+    }
+
+    @Test
+    public void testWireFormat() throws IOException {
+        List<Invalidation> invalidations = Arrays.asList(
+            new Invalidation(Invalidation.Type.ENTITY, USER, 1L),
+            new Invalidation(Invalidation.Type.COLLECTION, USER + ".authorities", 2),
+            new Invalidation(Invalidation.Type.CACHE, "de.witcom.app.security.UserDetails", "admin"),
+            new Invalidation(Invalidation.Type.NATURAL_ID, "de.witcom.app.domain.ExternalAccount", null),
+            new Invalidation(Invalidation.Type.ENTITY, USER, UUID.randomUUID()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Invalidation.write(new DataOutputStream(bytes), invalidations);
+
+        List<Invalidation> read = Invalidation.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // keys of other types widen to their region
+        assertThat(read).containsExactly(invalidations.get(0), invalidations.get(1), invalidations.get(2),
+            invalidations.get(3), new Invalidation(Invalidation.Type.ENTITY, USER, null));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private SessionFactoryImplementor sessionFactory(Cache cache) {
+        SessionFactoryImplementor sessionFactory = mock(SessionFactoryImplementor.class);
+        ServiceRegistryImplementor serviceRegistry = mock(ServiceRegistryImplementor.class);
+        when(sessionFactory.getServiceRegistry()).thenReturn(serviceRegistry);
+        when(serviceRegistry.getService(EventListenerRegistry.class)).thenReturn(mock(EventListenerRegistry.class));
+        when(sessionFactory.getCache()).thenReturn(cache);
+        return sessionFactory;
+    }
+
+    private PostUpdateEvent updateEvent(Long id) {
+        EntityPersister persister = mock(EntityPersister.class);
+        when(persister.hasCache()).thenReturn(true);
+        when(persister.getEntityName()).thenReturn(USER);
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getPersister()).thenReturn(persister);
+        when(event.getId()).thenReturn(id);
+        return event;
+    }
+}
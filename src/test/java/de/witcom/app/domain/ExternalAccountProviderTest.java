@@ -0,0 +1,36 @@
+package de.witcom.app.domain;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the ExternalAccountProvider lookups.
+ *
+ * @see ExternalAccountProvider
+ */
+public class ExternalAccountProviderTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueOfRejectsUnregisteredName() {
+        ExternalAccountProvider.valueOf("REMOVED_ISSUER");
+    }
+
+    @Test
+    public void testStoredAccountOfRemovedIssuerCanBeRead() {
+        ExternalAccount account = new ExternalAccount();
+        // as loaded from the database
+        ReflectionTestUtils.setField(account, "externalProvider", "REMOVED_ISSUER");
+
+        ExternalAccountProvider provider = account.getExternalProvider();
+        assertThat(provider.name()).isEqualTo("REMOVED_ISSUER");
+        assertThat(provider.isRegistered()).isFalse();
+    }
+
+    @Test
+    public void testStoredNameResolvesToRegisteredProvider() {
+        assertThat(ExternalAccountProvider.forStoredName("DUMMYSSO")).isSameAs(ExternalAccountProvider.DUMMYSSO);
+        assertThat(ExternalAccountProvider.DUMMYSSO.isRegistered()).isTrue();
+    }
+}
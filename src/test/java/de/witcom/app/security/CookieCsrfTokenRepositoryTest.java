@@ -0,0 +1,49 @@
+package de.witcom.app.security;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.csrf.CsrfToken;
+
+import javax.servlet.http.Cookie;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the CookieCsrfTokenRepository.
+ *
+ * @see CookieCsrfTokenRepository
+ */
+public class CookieCsrfTokenRepositoryTest {
+
+    private final CookieCsrfTokenRepository repository = new CookieCsrfTokenRepository();
+
+    @Test
+    public void testTokenIsKeptInCookieWithoutSession() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(repository.loadToken(request)).isNull();
+
+        CsrfToken token = repository.generateToken(request);
+        repository.saveToken(token, request, response);
+
+        assertThat(request.getSession(false)).isNull();
+        Cookie cookie = response.getCookie(CookieCsrfTokenRepository.COOKIE_NAME);
+        assertThat(cookie.getValue()).isEqualTo(token.getToken());
+        assertThat(cookie.isHttpOnly()).isFalse();
+
+        MockHttpServletRequest next = new MockHttpServletRequest();
+        next.setCookies(cookie);
+        CsrfToken loaded = repository.loadToken(next);
+        assertThat(loaded.getToken()).isEqualTo(token.getToken());
+        assertThat(loaded.getHeaderName()).isEqualTo("X-CSRF-TOKEN");
+    }
+
+    @Test
+    public void testSavingNoTokenRemovesCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveToken(null, new MockHttpServletRequest(), response);
+
+        assertThat(response.getCookie(CookieCsrfTokenRepository.COOKIE_NAME).getMaxAge()).isEqualTo(0);
+    }
+}
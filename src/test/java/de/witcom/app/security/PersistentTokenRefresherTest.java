@@ -0,0 +1,148 @@
+package de.witcom.app.security;
+
+import de.witcom.app.domain.PersistentToken;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the PersistentTokenRefresher, with two nodes sharing an in-memory database and no sticky
+ * sessions.
+ *
+ * @see PersistentTokenRefresher
+ */
+public class PersistentTokenRefresherTest {
+
+    private static final String SERIES = "series";
+
+    private static final String INITIAL_VALUE = "initial";
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private PersistentTokenRefresher node1;
+
+    private PersistentTokenRefresher node2;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("token-refresher-test").build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table T_PERSISTENT_TOKEN (series varchar(255) primary key, user_id bigint, " +
+            "token_value varchar(255) not null, previous_token_value varchar(255), rotated_at bigint, " +
+            "token_date date, ip_address varchar(39), user_agent varchar(255))");
+        jdbcTemplate.update("insert into T_PERSISTENT_TOKEN (series, token_value) values (?, ?)", SERIES, INITIAL_VALUE);
+        node1 = refresher();
+        node2 = refresher();
+    }
+
+    @After
+    public void teardown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testRotatedValueIsAcceptedByAnotherNode() {
+        String rotated = node1.refresh(load(), "127.0.0.1", "Browser");
+        assertThat(rotated).isNotEqualTo(INITIAL_VALUE);
+
+        // the next request reaches the other node, before any flush
+        PersistentToken token = load();
+        assertThat(node2.accepts(token, rotated)).isTrue();
+        // a tab still sending the previous cookie, within the grace period
+        assertThat(node2.accepts(token, INITIAL_VALUE)).isTrue();
+        assertThat(node2.accepts(token, "forged")).isFalse();
+
+        // within the rotation window, the other node keeps the value
+        assertThat(node2.refresh(token, "127.0.0.1", "Browser")).isEqualTo(rotated);
+    }
+
+    @Test
+    public void testConcurrentRotationsAgreeOnOneValue() {
+        // both nodes read the series before either rotated it
+        PersistentToken token1 = load();
+        PersistentToken token2 = load();
+
+        String rotated = node1.refresh(token1, "127.0.0.1", "Browser");
+        assertThat(node2.refresh(token2, "127.0.0.1", "Browser")).isEqualTo(rotated);
+        assertThat(load().getTokenValue()).isEqualTo(rotated);
+    }
+
+    @Test
+    public void testPreviousValueExpiresAfterGracePeriod() {
+        String rotated = node1.refresh(load(), "127.0.0.1", "Browser");
+        jdbcTemplate.update("update T_PERSISTENT_TOKEN set rotated_at = rotated_at - 60000");
+
+        PersistentToken token = load();
+        assertThat(node2.accepts(token, INITIAL_VALUE)).isFalse();
+        assertThat(node2.accepts(token, rotated)).isTrue();
+    }
+
+    @Test
+    public void testUsesAreWrittenOnFlush() {
+        node1.refresh(load(), "10.0.0.1", "Browser");
+        assertThat(load().getIpAddress()).isNull();
+
+        node1.flush();
+        PersistentToken token = load();
+        assertThat(token.getIpAddress()).isEqualTo("10.0.0.1");
+        assertThat(token.getUserAgent()).isEqualTo("Browser");
+        assertThat(token.getTokenDate()).isNotNull();
+    }
+
+    private PersistentTokenRefresher refresher() {
+        MockEnvironment env = new MockEnvironment();
+        env.setProperty("jhipster.security.rememberme.rotationWindow", "60");
+        env.setProperty("jhipster.security.rememberme.gracePeriod", "30");
+        PersistentTokenRefresher refresher = new PersistentTokenRefresher(env, database,
+            new DataSourceTransactionManager(database));
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.getCache()).thenReturn(mock(Cache.class));
+        ReflectionTestUtils.setField(refresher, "entityManagerFactory", entityManagerFactory);
+        return refresher;
+    }
+
+    /**
+     * The token as the remember-me services read it, from the database.
+     */
+    private PersistentToken load() {
+        return jdbcTemplate.queryForObject("select * from T_PERSISTENT_TOKEN where series = ?", new RowMapper<PersistentToken>() {
+            @Override
+            public PersistentToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+                PersistentToken token = new PersistentToken();
+                token.setSeries(rs.getString("series"));
+                token.setTokenValue(rs.getString("token_value"));
+                token.setPreviousTokenValue(rs.getString("previous_token_value"));
+                long rotatedAt = rs.getLong("rotated_at");
+                token.setRotatedAt(rs.wasNull() ? null : rotatedAt);
+                if (rs.getDate("token_date") != null) {
+                    token.setTokenDate(new LocalDate(rs.getDate("token_date")));
+                }
+                token.setIpAddress(rs.getString("ip_address"));
+                if (rs.getString("user_agent") != null) {
+                    token.setUserAgent(rs.getString("user_agent"));
+                }
+                return token;
+            }
+        }, SERIES);
+    }
+}
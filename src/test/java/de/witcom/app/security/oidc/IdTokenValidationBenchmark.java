@@ -0,0 +1,113 @@
+package de.witcom.app.security.oidc;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares validating an RS256 id token from scratch (parse and verify the signature) with a hit in
+ * the verified token cache.
+ * <p/>
+ * Not a unit test; run it from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=de.witcom.app.security.oidc.IdTokenValidationBenchmark</code>.
+ *
+ * @see OIDCVerifiedTokenCache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdTokenValidationBenchmark {
+
+    private CacheManager cacheManager;
+
+    private OIDCVerifiedTokenCache verifiedTokenCache;
+
+    private RSASSAVerifier verifier;
+
+    private String idTokenValue;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        verifier = new RSASSAVerifier((RSAPublicKey) keyPair.getPublic());
+
+        JWTClaimsSet claims = new JWTClaimsSet();
+        claims.setIssuer("https://idp.example.com");
+        claims.setSubject("benchmark");
+        claims.setAudience(Collections.singletonList("client"));
+        claims.setIssueTime(new Date());
+        claims.setExpirationTime(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        claims.setCustomClaim("nonce", "1234");
+
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claims);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) keyPair.getPrivate()));
+        idTokenValue = jwt.serialize();
+
+        cacheManager = CacheManager.newInstance(new Configuration()
+            .name("benchmark")
+            .defaultCache(new CacheConfiguration("default", 100)));
+        Cache cache = new Cache(new CacheConfiguration(OIDCVerifiedTokenCache.CACHE_NAME, 1000).timeToLiveSeconds(3600));
+        cacheManager.addCache(cache);
+        verifiedTokenCache = new OIDCVerifiedTokenCache(cache);
+        verifiedTokenCache.put(idTokenValue, SignedJWT.parse(idTokenValue).getJWTClaimsSet());
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Benchmark
+    public ReadOnlyJWTClaimsSet cold() throws Exception {
+        SignedJWT jwt = SignedJWT.parse(idTokenValue);
+        if (!jwt.verify(verifier)) {
+            throw new IllegalStateException("Signature validation failed");
+        }
+        return jwt.getJWTClaimsSet();
+    }
+
+    @Benchmark
+    public ReadOnlyJWTClaimsSet warm() {
+        return verifiedTokenCache.get(idTokenValue);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(IdTokenValidationBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+        new Runner(options).run();
+    }
+}
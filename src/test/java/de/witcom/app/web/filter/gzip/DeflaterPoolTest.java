@@ -0,0 +1,45 @@
+package de.witcom.app.web.filter.gzip;
+
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the DeflaterPool.
+ *
+ * @see DeflaterPool
+ */
+public class DeflaterPoolTest {
+
+    @Test
+    public void testReleasedDeflaterIsReused() {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        Deflater deflater = pool.acquire();
+        deflater.setInput(new byte[]{1, 2, 3});
+        pool.release(deflater);
+
+        Deflater reused = pool.acquire();
+        assertThat(reused).isSameAs(deflater);
+        // released Deflaters are reset
+        assertThat(reused.getBytesRead()).isEqualTo(0);
+        assertThat(reused.needsInput()).isTrue();
+        pool.release(reused);
+        pool.clear();
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.BEST_SPEED);
+        Deflater first = pool.acquire();
+        Deflater second = pool.acquire();
+        assertThat(second).isNotSameAs(first);
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.acquire()).isSameAs(first);
+        assertThat(pool.acquire()).isNotSameAs(second);
+        pool.clear();
+    }
+}
@@ -0,0 +1,39 @@
+package de.witcom.app.web.filter.gzip;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the GZipContentTypes.
+ *
+ * @see GZipContentTypes
+ */
+public class GZipContentTypesTest {
+
+    private final GZipContentTypes contentTypes = new GZipContentTypes(GZipContentTypes.DEFAULT_EXCLUDED);
+
+    @Test
+    public void testTextIsCompressible() {
+        assertThat(contentTypes.isCompressible("application/json")).isTrue();
+        assertThat(contentTypes.isCompressible("text/html; charset=UTF-8")).isTrue();
+        assertThat(contentTypes.isCompressible("image/svg+xml")).isTrue();
+        assertThat(contentTypes.isCompressible(null)).isTrue();
+    }
+
+    @Test
+    public void testCompressedTypesAreExcluded() {
+        assertThat(contentTypes.isCompressible("image/png")).isFalse();
+        assertThat(contentTypes.isCompressible("Video/MP4")).isFalse();
+        assertThat(contentTypes.isCompressible("application/zip")).isFalse();
+        assertThat(contentTypes.isCompressible("application/pdf;version=1.7")).isFalse();
+    }
+
+    @Test
+    public void testCustomExclusions() {
+        GZipContentTypes custom = new GZipContentTypes(" text/csv , ,application/x-custom/");
+        assertThat(custom.isCompressible("text/csv")).isFalse();
+        assertThat(custom.isCompressible("application/x-custom/sub")).isFalse();
+        assertThat(custom.isCompressible("image/png")).isTrue();
+    }
+}
@@ -0,0 +1,120 @@
+package de.witcom.app.web.filter.gzip;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the StreamingGZipServletOutputStream.
+ *
+ * @see StreamingGZipServletOutputStream
+ */
+public class StreamingGZipServletOutputStreamTest {
+
+    private static final int THRESHOLD = 64;
+
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    private MockHttpServletResponse response;
+
+    private StreamingGZipServletOutputStream stream;
+
+    @Before
+    public void setup() {
+        response = new MockHttpServletResponse();
+        response.setContentType("application/json");
+        stream = new StreamingGZipServletOutputStream(new MockHttpServletRequest(), response, new DeflaterPool(1, 6),
+            new GZipContentTypes(GZipContentTypes.DEFAULT_EXCLUDED), THRESHOLD);
+    }
+
+    @Test
+    public void testBodyBelowThresholdIsSentUncompressed() throws IOException {
+        byte[] body = body(THRESHOLD);
+        stream.write(body);
+        stream.finish();
+
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentLength()).isEqualTo(THRESHOLD);
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void testBodyOverThresholdIsCompressed() throws IOException {
+        byte[] body = body(10000);
+        stream.write(body, 0, 10);
+        stream.write(body, 10, body.length - 10);
+        stream.finish();
+
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getContentAsByteArray().length).isLessThan(body.length);
+        // GZIPInputStream checks the CRC and the size of the trailer
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+    }
+
+    @Test
+    public void testIncompressibleContentTypeIsPassedThrough() throws IOException {
+        response.setContentType("image/png");
+        byte[] body = body(1000);
+        stream.write(body);
+        stream.finish();
+
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void testFlushSendsAllCompressedData() throws IOException, DataFormatException {
+        byte[] body = body(1000);
+        stream.write(body);
+        stream.flush();
+
+        // before the end of the stream, everything written so far can be inflated
+        byte[] sent = response.getContentAsByteArray();
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(sent, GZIP_HEADER_LENGTH, sent.length - GZIP_HEADER_LENGTH);
+        byte[] inflated = new byte[body.length + 1];
+        int length = inflater.inflate(inflated);
+        inflater.end();
+        assertThat(Arrays.copyOf(inflated, length)).isEqualTo(body);
+
+        stream.write(body);
+        stream.finish();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(body);
+        expected.write(body);
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(expected.toByteArray());
+    }
+
+    private static byte[] body(int length) {
+        StringBuilder body = new StringBuilder(length);
+        while (body.length() < length) {
+            body.append("{\"event\":").append(body.length()).append("},");
+        }
+        return body.substring(0, length).getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package de.witcom.app.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.witcom.app.Application;
+import de.witcom.app.domain.User;
 import de.witcom.app.repository.UserRepository;
+import de.witcom.app.service.UserService;
+import de.witcom.app.web.rest.util.CursorCodec;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,10 +16,18 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -30,15 +42,25 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @IntegrationTest
 public class UserResourceTest {
 
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]*)>; rel=\"next\"");
+
     @Inject
     private UserRepository userRepository;
 
+    @Inject
+    private UserService userService;
+
+    @Inject
+    private CursorCodec cursorCodec;
+
     private MockMvc restUserMockMvc;
 
     @Before
     public void setup() {
         UserResource userResource = new UserResource();
         ReflectionTestUtils.setField(userResource, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userResource, "userService", userService);
+        ReflectionTestUtils.setField(userResource, "cursorCodec", cursorCodec);
         this.restUserMockMvc = MockMvcBuilders.standaloneSetup(userResource).build();
     }
 
@@ -57,4 +79,46 @@ public class UserResourceTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound());
     }
+
+    @Test
+    public void testKeysetPagesCoverAllUsersOnce() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (User user : userRepository.findAll()) {
+            expected.add(user.getLogin());
+        }
+
+        List<String> logins = new ArrayList<>();
+        String url = "/api/users?cursor=&per_page=2";
+        while (url != null) {
+            MvcResult result = restUserMockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                // the first page stays in keyset mode
+                .andExpect(header().string("Link", containsString("cursor=>; rel=\"first\"")))
+                .andReturn();
+            List<?> page = new ObjectMapper().readValue(result.getResponse().getContentAsString(), List.class);
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            for (Object user : page) {
+                logins.add((String) ((Map<?, ?>) user).get("login"));
+            }
+            Matcher next = NEXT_LINK.matcher(result.getResponse().getHeader("Link"));
+            url = next.find() ? next.group(1) : null;
+        }
+
+        assertThat(logins).containsOnly(expected.toArray(new String[expected.size()]));
+        assertThat(logins).doesNotHaveDuplicates();
+        assertThat(logins).isSorted();
+    }
+
+    @Test
+    public void testForgedCursorIsRejected() throws Exception {
+        restUserMockMvc.perform(get("/api/users?cursor=61646d696e.0000").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testCursorOfAnotherListIsRejected() throws Exception {
+        restUserMockMvc.perform(get("/api/users?cursor=" + cursorCodec.encode("audits", "admin"))
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
 }
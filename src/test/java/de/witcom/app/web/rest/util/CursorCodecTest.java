@@ -0,0 +1,68 @@
+package de.witcom.app.web.rest.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.security.GeneralSecurityException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the CursorCodec.
+ *
+ * @see CursorCodec
+ */
+public class CursorCodecTest {
+
+    private CursorCodec cursorCodec;
+
+    @Before
+    public void setup() throws GeneralSecurityException {
+        cursorCodec = new CursorCodec(environment("first-key"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String token = cursorCodec.encode("users", "admin");
+
+        assertThat(token).doesNotContain("admin");
+        assertThat(cursorCodec.decode("users", token)).isEqualTo("admin");
+        assertThat(cursorCodec.decode("users", cursorCodec.encode("users", ""))).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForgedPositionIsRejected() {
+        String token = cursorCodec.encode("users", "admin");
+        String signature = token.substring(token.indexOf('.'));
+        // "user" in hexadecimal, with the signature of "admin"
+        cursorCodec.decode("users", "75736572" + signature);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenOfAnotherScopeIsRejected() {
+        cursorCodec.decode("audits", cursorCodec.encode("users", "admin"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenOfAnotherKeyIsRejected() throws GeneralSecurityException {
+        String token = new CursorCodec(environment("second-key")).encode("users", "admin");
+        cursorCodec.decode("users", token);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedTokenIsRejected() {
+        cursorCodec.decode("users", "not-a-cursor");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHexadecimalIsRejected() {
+        cursorCodec.decode("users", "zz.zz");
+    }
+
+    private static MockEnvironment environment(String rememberMeKey) {
+        MockEnvironment env = new MockEnvironment();
+        env.setProperty("jhipster.security.rememberme.key", rememberMeKey);
+        return env;
+    }
+}